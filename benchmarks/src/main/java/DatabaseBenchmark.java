@@ -0,0 +1,329 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+public class DatabaseBenchmark {
+    private static final int WARMUP_OPS = 20_000;
+    private static final int READ_OPS = 200_000;
+    private static final int WRITE_OPS = 50_000;
+    private static final int REMOVE_ADDRESSES = 1_000;
+    private static final int FILE_ITERATIONS = 5;
+    private static final int COMMIT_BASE = 10_000;
+    private static final int COMMIT_OPS = 2_000;
+    private static final int[] COMMIT_THREADS = {1, 8};
+    private static final long COMMIT_INTERVAL_MS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final Pattern filter;
+    private final boolean columnar;
+    private final Path workDir;
+    private final List<Result> results = new ArrayList<>();
+
+    DatabaseBenchmark(Pattern filter, boolean columnar, Path workDir) {
+        this.filter = filter;
+        this.columnar = columnar;
+        this.workDir = workDir;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {10_000, 100_000, 1_000_000};
+        Pattern filter = Pattern.compile(".*");
+        boolean columnar = false;
+        File csv = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = Arrays.stream(args[++i].split(",")).mapToInt(s -> Integer.parseInt(s.trim().replace("_", ""))).toArray();
+                    break;
+                case "--filter":
+                    filter = Pattern.compile(args[++i]);
+                    break;
+                case "--columnar":
+                    columnar = true;
+                    break;
+                case "--csv":
+                    csv = new File(args[++i]);
+                    break;
+                default:
+                    System.err.println("Usage: DatabaseBenchmark [--sizes 10000,100000] [--filter regex] [--columnar] [--csv file]");
+                    System.exit(2);
+            }
+        }
+        Path workDir = Files.createTempDirectory("database-bench");
+        DatabaseBenchmark benchmark = new DatabaseBenchmark(filter, columnar, workDir);
+        try {
+            System.out.println(Result.HEADER);
+            for (int size : sizes) {
+                benchmark.run(size);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(workDir)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        if (csv != null) {
+            benchmark.writeCsv(csv);
+        }
+    }
+
+    private Database newDatabase() {
+        return columnar ? new Database(new ColumnarOrderStore()) : new Database();
+    }
+
+    void run(int size) throws Exception {
+        OrderGenerator generator = OrderGenerator.forSize(size);
+        List<Order> orders = generator.orders(1, size);
+
+        Database warm = newDatabase();
+        List<Order> warmOrders = OrderGenerator.forSize(WARMUP_OPS).orders(size + 1, WARMUP_OPS);
+        if (enabled("addRecord")) {
+            warmOrders.forEach(warm::addRecord);
+        }
+        Database database = newDatabase();
+        measure("addRecord", size, 0, size, i -> database.addRecord(orders.get(i)));
+        if (!enabled("addRecord")) {
+            database.addRecords(orders);
+        }
+
+        int reads = Math.min(READ_OPS, size * 4);
+        int[] ids = new int[reads];
+        String[] addresses = new String[reads];
+        LocalDate[] dates = new LocalDate[reads];
+        double[] weights = new double[reads];
+        for (int i = 0; i < reads; i++) {
+            Order order = orders.get(generator.nextInt(size));
+            ids[i] = order.getId();
+            addresses[i] = generator.address();
+            dates[i] = generator.date();
+            weights[i] = order.getWeight();
+        }
+        measure("findById", size, WARMUP_OPS, reads, i -> database.findById(ids[i % reads]));
+        measure("findByAddress", size, WARMUP_OPS, reads, i -> database.findByAddress(addresses[i % reads]));
+        measure("findByDate", size, WARMUP_OPS, reads, i -> database.findByDate(dates[i % reads]));
+        measure("findByWeight", size, WARMUP_OPS, reads, i -> database.findByWeight(weights[i % reads]));
+        measure("findByDateRange", size, WARMUP_OPS / 10, reads / 10,
+                i -> database.findByDateRange(dates[i % reads], dates[i % reads].plusDays(7)));
+        measure("findByWeightRange", size, WARMUP_OPS / 10, reads / 10,
+                i -> database.findByWeightRange(weights[i % reads], weights[i % reads] + 0.5));
+        measure("top100ByWeight", size, WARMUP_OPS / 10, reads / 10, i -> database.top(100, PageRequest.Sort.WEIGHT));
+        measure("top100ByWeight[week]", size, WARMUP_OPS / 10, reads / 10,
+                i -> database.top(100, PageRequest.Sort.WEIGHT, dates[i % reads], dates[i % reads].plusDays(7)));
+        measure("top100ByWeight[address]", size, WARMUP_OPS / 10, reads / 10,
+                i -> database.top(100, PageRequest.Sort.WEIGHT, addresses[i % reads]));
+        measure("weightQuantile", size, WARMUP_OPS, reads, i -> database.weightQuantile((i % 100) / 100.0));
+
+        int writes = Math.min(WRITE_OPS, size);
+        measure("editRecord", size, WARMUP_OPS, writes, i -> {
+            Order order = orders.get(generator.nextInt(size));
+            database.editRecord(order.getId(), generator.address(), generator.date(), generator.weight());
+        });
+
+        File file = workDir.resolve("orders-" + size + ".db").toFile();
+        database.setFilePath(file.getPath());
+        measure("saveDatabase", size, 1, FILE_ITERATIONS, i -> io(database::saveDatabase));
+        Database loaded = newDatabase();
+        loaded.setFilePath(file.getPath());
+        measure("loadDatabase", size, 1, FILE_ITERATIONS, i -> io(loaded::loadDatabase));
+        for (OrderFile.Format format : EnumSet.complementOf(EnumSet.of(OrderFile.Format.BINARY))) {
+            String suffix = "[" + format.name().toLowerCase(Locale.ROOT) + "]";
+            database.setFileFormat(format);
+            measure("saveDatabase" + suffix, size, 1, FILE_ITERATIONS, i -> io(database::saveDatabase));
+            measure("loadDatabase" + suffix, size, 1, FILE_ITERATIONS, i -> io(loaded::loadDatabase));
+        }
+        database.setFileFormat(OrderFile.Format.BINARY);
+
+        database.setJournalEnabled(true);
+        measure("backupDatabase", size, 1, FILE_ITERATIONS, i -> io(database::backupDatabase));
+        for (int i = 0; i < writes; i++) {
+            Order order = orders.get(generator.nextInt(size));
+            database.editRecord(order.getId(), order.getAddress(), order.getDate(), generator.weight());
+        }
+        measure("restoreDatabase", size, 1, FILE_ITERATIONS, i -> io(database::restoreDatabase));
+        database.awaitCheckpoint();
+        database.setJournalEnabled(false);
+
+        List<Order> commitOrders = orders.subList(0, Math.min(size, COMMIT_BASE));
+        for (Journal.SyncPolicy policy : Journal.SyncPolicy.values()) {
+            for (int threads : COMMIT_THREADS) {
+                String name = "commit[" + policy.name().toLowerCase(Locale.ROOT) + ",t" + threads + "]";
+                if (!enabled(name)) {
+                    continue;
+                }
+                Database journaled = newDatabase();
+                journaled.addRecords(commitOrders);
+                journaled.setFilePath(workDir.resolve("commit-" + size + ".db").toString());
+                journaled.setCheckpointThreshold(Integer.MAX_VALUE);
+                journaled.setSyncPolicy(policy, COMMIT_INTERVAL_MS);
+                journaled.setJournalEnabled(true);
+                Order first = commitOrders.get(0);
+                journaled.editRecord(first.getId(), first.getAddress(), first.getDate(), first.getWeight());
+                journaled.awaitCheckpoint();
+                measureConcurrent(name, size, threads, COMMIT_OPS, i -> {
+                    Order order = commitOrders.get(i % commitOrders.size());
+                    journaled.editRecord(order.getId(), order.getAddress(), order.getDate(), order.getWeight() + 1);
+                });
+                journaled.closeJournal();
+            }
+        }
+
+        File xlsx = workDir.resolve("orders-" + size + ".xlsx").toFile();
+        measure("exportToXlsx", size, 0, 1, i -> io(() -> database.exportToXlsx(xlsx.getPath())));
+        xlsx.delete();
+
+        int removals = Math.min(REMOVE_ADDRESSES, generator.addressCount());
+        measure("removeRecordsByAddress", size, 0, removals, i -> database.removeRecordsByAddress(generator.address(i)));
+    }
+
+    private boolean enabled(String name) {
+        return filter.matcher(name).find();
+    }
+
+    private void measure(String name, int size, int warmup, int ops, IntConsumer op) {
+        if (!enabled(name)) {
+            return;
+        }
+        for (int i = 0; i < warmup; i++) {
+            op.accept(i);
+        }
+        long[] latencies = new long[ops];
+        long gcBefore = gcMillis();
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            long opStart = System.nanoTime();
+            op.accept(warmup + i);
+            latencies[i] = System.nanoTime() - opStart;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        Result result = new Result(name, size, ops, elapsed, latencies, allocated, gcMillis() - gcBefore);
+        results.add(result);
+        System.out.println(result);
+    }
+
+    private void measureConcurrent(String name, int size, int threads, int ops, IntConsumer op) throws Exception {
+        long[] latencies = new long[ops];
+        AtomicInteger next = new AtomicInteger();
+        LongAdder allocated = new LongAdder();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            long gcBefore = gcMillis();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+                    int i;
+                    while ((i = next.getAndIncrement()) < ops) {
+                        long opStart = System.nanoTime();
+                        op.accept(i);
+                        latencies[i] = System.nanoTime() - opStart;
+                    }
+                    allocated.add(THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore);
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            Result result = new Result(name, size, ops, elapsed, latencies, allocated.sum(), gcMillis() - gcBefore);
+            results.add(result);
+            System.out.println(result);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private void writeCsv(File csv) throws IOException {
+        try (PrintWriter out = new PrintWriter(csv, "UTF-8")) {
+            out.println("benchmark,size,ops,ops_per_sec,p50_us,p90_us,p99_us,p999_us,max_us,bytes_per_op,alloc_mb_per_sec,gc_ms");
+            for (Result result : results) {
+                out.println(result.toCsv());
+            }
+        }
+    }
+
+    private static void io(IoAction action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private interface IoAction {
+        void run() throws Exception;
+    }
+
+    private static final class Result {
+        static final String HEADER = String.format(Locale.ROOT, "%-24s %10s %9s %14s %10s %10s %10s %10s %10s %12s %10s %7s",
+                "benchmark", "size", "ops", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "B/op", "MB/s", "gc ms");
+
+        final String name;
+        final int size;
+        final int ops;
+        final double opsPerSecond;
+        final long[] sorted;
+        final long bytesPerOp;
+        final double allocationRate;
+        final long gcMillis;
+
+        Result(String name, int size, int ops, long elapsedNanos, long[] latencies, long allocated, long gcMillis) {
+            this.name = name;
+            this.size = size;
+            this.ops = ops;
+            this.opsPerSecond = ops * 1e9 / elapsedNanos;
+            this.sorted = latencies.clone();
+            Arrays.sort(this.sorted);
+            this.bytesPerOp = allocated / Math.max(1, ops);
+            this.allocationRate = allocated / 1048576.0 / (elapsedNanos / 1e9);
+            this.gcMillis = gcMillis;
+        }
+
+        double percentile(double p) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-24s %10d %9d %14.1f %10.2f %10.2f %10.2f %10.2f %10.2f %12d %10.1f %7d",
+                    name, size, ops, opsPerSecond, percentile(0.5), percentile(0.9), percentile(0.99), percentile(0.999),
+                    sorted[sorted.length - 1] / 1000.0, bytesPerOp, allocationRate, gcMillis);
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%d,%d,%.1f,%.2f,%.2f,%.2f,%.2f,%.2f,%d,%.1f,%d",
+                    name, size, ops, opsPerSecond, percentile(0.5), percentile(0.9), percentile(0.99), percentile(0.999),
+                    sorted[sorted.length - 1] / 1000.0, bytesPerOp, allocationRate, gcMillis);
+        }
+    }
+}
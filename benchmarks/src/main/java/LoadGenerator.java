@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoadGenerator {
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+
+    private final int port;
+    private final int size;
+    private final int clients;
+    private final long durationNanos;
+    private final int pipeline;
+    private final int writePercent;
+    private final AtomicInteger nextId;
+
+    LoadGenerator(int port, int size, int clients, long durationNanos, int pipeline, int writePercent) {
+        this.port = port;
+        this.size = size;
+        this.clients = clients;
+        this.durationNanos = durationNanos;
+        this.pipeline = pipeline;
+        this.writePercent = writePercent;
+        this.nextId = new AtomicInteger(size + 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = -1;
+        int size = 100_000;
+        int[] clients = {1, 4, 16, 64};
+        int seconds = 10;
+        int pipeline = 1;
+        int writePercent = 10;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--size":
+                    size = Integer.parseInt(args[++i].replace("_", ""));
+                    break;
+                case "--clients":
+                    clients = Arrays.stream(args[++i].split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--pipeline":
+                    pipeline = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "--writes":
+                    writePercent = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Usage: LoadGenerator [--port n] [--size 100000] [--clients 1,4,16,64] [--seconds 10] [--pipeline 1] [--writes 10]");
+                    System.exit(2);
+            }
+        }
+        DatabaseServer server = null;
+        if (port < 0) {
+            Database database = new Database();
+            database.addRecords(OrderGenerator.forSize(size).orders(1, size));
+            server = new DatabaseServer(database, 0);
+            server.start();
+            port = server.getPort();
+        } else {
+            try (DatabaseClient client = new DatabaseClient(port)) {
+                size = client.size();
+            }
+        }
+        try {
+            System.out.println(String.format(Locale.ROOT, "%8s %9s %7s %12s %14s %10s %10s %10s %10s",
+                    "clients", "pipeline", "writes", "requests", "requests/s", "call p50", "call p99", "call p99.9", "call max"));
+            for (int clientCount : clients) {
+                LoadGenerator generator = new LoadGenerator(port, size, clientCount, seconds * 1_000_000_000L, pipeline, writePercent);
+                generator.run(WARMUP_NANOS);
+                System.out.println(generator.run(generator.durationNanos));
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    String run(long nanos) throws Exception {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        List<Future<long[]>> workers = new ArrayList<>();
+        long deadline = System.nanoTime() + nanos;
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            long seed = i;
+            workers.add(executor.submit(() -> work(seed, deadline)));
+        }
+        List<long[]> latencies = new ArrayList<>();
+        for (Future<long[]> worker : workers) {
+            latencies.add(worker.get());
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        int total = 0;
+        for (long[] worker : latencies) {
+            total += worker.length;
+        }
+        long[] sorted = new long[total];
+        int offset = 0;
+        for (long[] worker : latencies) {
+            System.arraycopy(worker, 0, sorted, offset, worker.length);
+            offset += worker.length;
+        }
+        Arrays.sort(sorted);
+        long requests = (long) total * pipeline;
+        return String.format(Locale.ROOT, "%8d %9d %6d%% %12d %14.1f %10.1f %10.1f %10.1f %10.1f",
+                clients, pipeline, writePercent, requests, requests * 1e9 / elapsed,
+                percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1000.0);
+    }
+
+    private long[] work(long seed, long deadline) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        OrderGenerator orders = new OrderGenerator(seed, Math.max(10, size / 20), LocalDate.of(2024, 12, 31));
+        long[] latencies = new long[1024];
+        int count = 0;
+        int[] ids = new int[pipeline];
+        try (DatabaseClient client = new DatabaseClient(port)) {
+            while (System.nanoTime() < deadline) {
+                long start = System.nanoTime();
+                if (random.nextInt(100) < writePercent) {
+                    if (random.nextBoolean()) {
+                        client.addRecords(orders.orders(nextId.getAndAdd(pipeline), pipeline));
+                    } else {
+                        for (int i = 0; i < pipeline; i++) {
+                            client.editRecord(1 + random.nextInt(size), orders.address(), orders.date(), orders.weight());
+                        }
+                    }
+                } else if (pipeline == 1) {
+                    client.findById(1 + random.nextInt(size));
+                } else {
+                    for (int i = 0; i < pipeline; i++) {
+                        ids[i] = 1 + random.nextInt(size);
+                    }
+                    client.findByIds(ids);
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - start;
+            }
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1000.0;
+    }
+}
@@ -0,0 +1,74 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class OrderGenerator {
+    private static final double ADDRESS_SKEW = 1.1;
+    private static final double RECENT_DAYS = 120;
+    private static final int HISTORY_DAYS = 5 * 365;
+
+    private final SplittableRandom random;
+    private final String[] addresses;
+    private final double[] addressWeights;
+    private final LocalDate today;
+
+    public OrderGenerator(long seed, int addressCount, LocalDate today) {
+        this.random = new SplittableRandom(seed);
+        this.addresses = new String[addressCount];
+        this.addressWeights = new double[addressCount];
+        this.today = today;
+        double total = 0;
+        for (int i = 0; i < addressCount; i++) {
+            addresses[i] = "Street " + (i + 1) + ", building " + (i % 97 + 1);
+            total += 1 / Math.pow(i + 1, ADDRESS_SKEW);
+            addressWeights[i] = total;
+        }
+        for (int i = 0; i < addressCount; i++) {
+            addressWeights[i] /= total;
+        }
+    }
+
+    public static OrderGenerator forSize(int size) {
+        return new OrderGenerator(42, Math.max(10, size / 20), LocalDate.of(2024, 12, 31));
+    }
+
+    public List<Order> orders(int firstId, int count) {
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(new Order(firstId + i, address(), date(), weight()));
+        }
+        return orders;
+    }
+
+    public String address() {
+        int index = Arrays.binarySearch(addressWeights, random.nextDouble());
+        return addresses[Math.min(addresses.length - 1, index < 0 ? -index - 1 : index)];
+    }
+
+    public String address(int rank) {
+        return addresses[rank];
+    }
+
+    public int addressCount() {
+        return addresses.length;
+    }
+
+    public LocalDate date() {
+        int daysAgo = (int) Math.min(HISTORY_DAYS, -RECENT_DAYS * Math.log(1 - random.nextDouble()));
+        LocalDate date = today.minusDays(daysAgo);
+        if (date.getDayOfWeek().getValue() >= 6 && random.nextInt(3) != 0) {
+            date = date.minusDays(date.getDayOfWeek().getValue() - 5);
+        }
+        return date;
+    }
+
+    public double weight() {
+        return Math.max(0.1, Math.round(Math.exp(1.5 + 0.8 * random.nextGaussian()) * 10) / 10.0);
+    }
+
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+}
@@ -0,0 +1,400 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+public class AddressTextIndex {
+    private static final int GRAM = 3;
+    private static final int ASCII = 128;
+
+    private final HashMap<String, Integer> termIds = new HashMap<>();
+    private final ArrayList<String> terms = new ArrayList<>();
+    private final ArrayList<String> keys = new ArrayList<>();
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+    private final HashMap<Long, IntHashSet> grams = new HashMap<>();
+    private final Node root = new Node("");
+
+    public static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public int size() {
+        return termIds.size();
+    }
+
+    public void add(String address) {
+        if (address == null || termIds.containsKey(address)) {
+            return;
+        }
+        int id;
+        String key = normalize(address);
+        if (freeIds.isEmpty()) {
+            id = terms.size();
+            terms.add(address);
+            keys.add(key);
+        } else {
+            id = freeIds.pop();
+            terms.set(id, address);
+            keys.set(id, key);
+        }
+        termIds.put(address, id);
+        insert(key, id);
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            grams.computeIfAbsent(gram(key, i), g -> new IntHashSet()).add(id);
+        }
+    }
+
+    public void remove(String address) {
+        Integer id = address == null ? null : termIds.remove(address);
+        if (id == null) {
+            return;
+        }
+        String key = keys.get(id);
+        delete(key, id);
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            long gram = gram(key, i);
+            IntHashSet postings = grams.get(gram);
+            if (postings != null) {
+                postings.remove(id);
+                if (postings.isEmpty()) {
+                    grams.remove(gram);
+                }
+            }
+        }
+        terms.set(id, null);
+        keys.set(id, null);
+        freeIds.push(id);
+    }
+
+    public void clear() {
+        termIds.clear();
+        terms.clear();
+        keys.clear();
+        freeIds.clear();
+        grams.clear();
+        root.children = null;
+        root.ids = null;
+    }
+
+    public List<String> prefix(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        String key = normalize(prefix);
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                return result;
+            }
+            int common = commonPrefix(child.label, key, i);
+            if (i + common == key.length()) {
+                node = child;
+                break;
+            }
+            if (common < child.label.length()) {
+                return result;
+            }
+            node = child;
+            i += common;
+        }
+        collect(node, result, limit);
+        return result;
+    }
+
+    public List<String> containing(String text, int limit) {
+        String key = normalize(text);
+        List<String> result = new ArrayList<>();
+        if (key.length() < GRAM) {
+            for (int id = 0; id < keys.size(); id++) {
+                if (keys.get(id) != null && keys.get(id).contains(key)) {
+                    result.add(terms.get(id));
+                }
+            }
+        } else {
+            IntHashSet smallest = null;
+            for (int i = 0; i + GRAM <= key.length(); i++) {
+                IntHashSet postings = grams.get(gram(key, i));
+                if (postings == null) {
+                    return result;
+                }
+                if (smallest == null || postings.size() < smallest.size()) {
+                    smallest = postings;
+                }
+            }
+            smallest.forEach(id -> {
+                if (keys.get(id).contains(key)) {
+                    result.add(terms.get(id));
+                }
+            });
+        }
+        result.sort(Comparator.naturalOrder());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    public List<String> fuzzy(String text, int maxEdits, int limit) {
+        String key = normalize(text);
+        HashMap<Long, Boolean> queryGrams = new HashMap<>();
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            queryGrams.put(gram(key, i), Boolean.TRUE);
+        }
+        int threshold = queryGrams.size() - GRAM * maxEdits;
+        ToIntFunction<String> distance = distance(key);
+        List<int[]> matches = new ArrayList<>();
+        if (threshold <= 0) {
+            for (int id = 0; id < keys.size(); id++) {
+                if (keys.get(id) != null) {
+                    match(distance, id, maxEdits, matches);
+                }
+            }
+        } else {
+            List<IntHashSet> postings = new ArrayList<>(queryGrams.size());
+            for (Long gram : queryGrams.keySet()) {
+                postings.add(grams.getOrDefault(gram, new IntHashSet(0)));
+            }
+            postings.sort(Comparator.comparingInt(IntHashSet::size));
+            IntHashSet candidates = new IntHashSet();
+            for (int i = 0; i <= postings.size() - threshold; i++) {
+                candidates.addAll(postings.get(i));
+            }
+            candidates.forEach(id -> {
+                int shared = 0;
+                for (int i = postings.size() - 1; i >= 0 && shared < threshold && shared + i + 1 >= threshold; i--) {
+                    if (postings.get(i).contains(id)) {
+                        shared++;
+                    }
+                }
+                if (shared >= threshold) {
+                    match(distance, id, maxEdits, matches);
+                }
+            });
+        }
+        matches.sort(Comparator.<int[]>comparingInt(m -> m[1]).thenComparing(m -> terms.get(m[0])));
+        List<String> result = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            result.add(terms.get(matches.get(i)[0]));
+        }
+        return result;
+    }
+
+    private void match(ToIntFunction<String> distance, int id, int maxEdits, List<int[]> matches) {
+        int edits = distance.applyAsInt(keys.get(id));
+        if (edits <= maxEdits) {
+            matches.add(new int[]{id, edits});
+        }
+    }
+
+    static int substringDistance(String pattern, String text) {
+        return distance(pattern).applyAsInt(text);
+    }
+
+    private static ToIntFunction<String> distance(String pattern) {
+        if (pattern.isEmpty()) {
+            return text -> 0;
+        }
+        if (pattern.length() > Long.SIZE) {
+            return text -> dynamicDistance(pattern, text);
+        }
+        char[] chars = pattern.chars().distinct().sorted().collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+                .toString().toCharArray();
+        long[] masks = new long[chars.length];
+        long[] ascii = new long[ASCII];
+        for (int j = 0; j < pattern.length(); j++) {
+            char c = pattern.charAt(j);
+            masks[Arrays.binarySearch(chars, c)] |= 1L << j;
+            if (c < ASCII) {
+                ascii[c] |= 1L << j;
+            }
+        }
+        int m = pattern.length();
+        long last = 1L << (m - 1);
+        return text -> {
+            long positive = -1;
+            long negative = 0;
+            int score = m;
+            int best = m;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                long equal;
+                if (c < ASCII) {
+                    equal = ascii[c];
+                } else {
+                    int slot = Arrays.binarySearch(chars, c);
+                    equal = slot < 0 ? 0 : masks[slot];
+                }
+                long vertical = equal | negative;
+                long horizontal = (((equal & positive) + positive) ^ positive) | equal;
+                long horizontalPositive = negative | ~(horizontal | positive);
+                long horizontalNegative = positive & horizontal;
+                if ((horizontalPositive & last) != 0) {
+                    score++;
+                } else if ((horizontalNegative & last) != 0) {
+                    score--;
+                }
+                horizontalPositive <<= 1;
+                horizontalNegative <<= 1;
+                positive = horizontalNegative | ~(vertical | horizontalPositive);
+                negative = horizontalPositive & vertical;
+                best = Math.min(best, score);
+            }
+            return best;
+        };
+    }
+
+    private static int dynamicDistance(String pattern, String text) {
+        int m = pattern.length();
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        int best = previous[m];
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            current[0] = 0;
+            for (int j = 1; j <= m; j++) {
+                int substitute = previous[j - 1] + (pattern.charAt(j - 1) == c ? 0 : 1);
+                current[j] = Math.min(substitute, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            best = Math.min(best, current[m]);
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return best;
+    }
+
+    private static long gram(String key, int i) {
+        return ((long) key.charAt(i) << 32) | ((long) key.charAt(i + 1) << 16) | key.charAt(i + 2);
+    }
+
+    private static int commonPrefix(String label, String key, int offset) {
+        int n = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < n && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private void insert(String key, int id) {
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.child(key.charAt(i));
+            if (child == null) {
+                Node leaf = new Node(key.substring(i));
+                leaf.add(id);
+                node.put(leaf);
+                return;
+            }
+            int common = commonPrefix(child.label, key, i);
+            if (common < child.label.length()) {
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.put(child);
+                node.put(middle);
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+        node.add(id);
+    }
+
+    private void delete(String key, int id) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            path.add(node);
+            node = node.child(key.charAt(i));
+            if (node == null) {
+                return;
+            }
+            i += node.label.length();
+        }
+        if (node.ids == null || !node.ids.remove(id)) {
+            return;
+        }
+        if (!node.ids.isEmpty()) {
+            return;
+        }
+        node.ids = null;
+        Node parent = path.isEmpty() ? null : path.get(path.size() - 1);
+        if (node.children == null || node.children.isEmpty()) {
+            if (parent != null) {
+                parent.children.remove(node.label.charAt(0));
+                if (parent != root && parent.ids == null && parent.children.size() == 1) {
+                    merge(path.get(path.size() - 2), parent);
+                }
+            }
+        } else if (node.children.size() == 1 && parent != null) {
+            merge(parent, node);
+        }
+    }
+
+    private static void merge(Node parent, Node node) {
+        Node child = node.children.values().iterator().next();
+        child.label = node.label + child.label;
+        parent.put(child);
+    }
+
+    private void collect(Node node, List<String> result, int limit) {
+        if (result.size() >= limit) {
+            return;
+        }
+        if (node.ids != null) {
+            List<String> addresses = new ArrayList<>(node.ids.size());
+            node.ids.forEach(id -> addresses.add(terms.get(id)));
+            addresses.sort(Comparator.naturalOrder());
+            for (String address : addresses) {
+                if (result.size() >= limit) {
+                    return;
+                }
+                result.add(address);
+            }
+        }
+        if (node.children != null) {
+            for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                collect(entry.getValue(), result, limit);
+                if (result.size() >= limit) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class Node {
+        private String label;
+        private TreeMap<Character, Node> children;
+        private IntHashSet ids;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char c) {
+            return children == null ? null : children.get(c);
+        }
+
+        void put(Node child) {
+            if (children == null) {
+                children = new TreeMap<>();
+            }
+            children.put(child.label.charAt(0), child);
+        }
+
+        void add(int id) {
+            if (ids == null) {
+                ids = new IntHashSet(1);
+            }
+            ids.add(id);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.Locale;
+
+public class Aggregate {
+    private long count;
+    private double sum;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private long minCount;
+    private long maxCount;
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getAverage() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    void add(double weight) {
+        if (count++ == 0 || weight < min) {
+            min = weight;
+            minCount = 1;
+        } else if (weight == min) {
+            minCount++;
+        }
+        if (count == 1 || weight > max) {
+            max = weight;
+            maxCount = 1;
+        } else if (weight == max) {
+            maxCount++;
+        }
+        sum += weight;
+    }
+
+    boolean remove(double weight) {
+        if (--count == 0) {
+            clear();
+            return false;
+        }
+        sum -= weight;
+        if (weight == min) {
+            minCount--;
+        }
+        if (weight == max) {
+            maxCount--;
+        }
+        return minCount == 0 || maxCount == 0;
+    }
+
+    void merge(Aggregate other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0 || other.min < min) {
+            min = other.min;
+            minCount = other.minCount;
+        } else if (other.min == min) {
+            minCount += other.minCount;
+        }
+        if (count == 0 || other.max > max) {
+            max = other.max;
+            maxCount = other.maxCount;
+        } else if (other.max == max) {
+            maxCount += other.maxCount;
+        }
+        count += other.count;
+        sum += other.sum;
+    }
+
+    void setExtremes(double min, long minCount, double max, long maxCount) {
+        this.min = min;
+        this.minCount = minCount;
+        this.max = max;
+        this.maxCount = maxCount;
+    }
+
+    void setExtremes(Aggregate other) {
+        setExtremes(other.min, other.minCount, other.max, other.maxCount);
+    }
+
+    void clear() {
+        count = 0;
+        sum = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+        minCount = 0;
+        maxCount = 0;
+    }
+
+    Aggregate copy() {
+        Aggregate copy = new Aggregate();
+        copy.count = count;
+        copy.sum = sum;
+        copy.min = min;
+        copy.max = max;
+        copy.minCount = minCount;
+        copy.maxCount = maxCount;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        if (count == 0) {
+            return "no orders";
+        }
+        return String.format(Locale.ROOT, "%d orders, total %.2f, average %.2f, min %.2f, max %.2f",
+                count, sum, getAverage(), min, max);
+    }
+}
@@ -0,0 +1,188 @@
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+public class ColumnarOrderStore implements OrderStore {
+    private static final int NO_ADDRESS = -1;
+
+    private final IntIntHashMap rowById = new IntIntHashMap();
+    private int[] ids = new int[16];
+    private int[] epochDays = new int[16];
+    private double[] weights = new double[16];
+    private int[] addressCodes = new int[16];
+    private int rows;
+
+    private final HashMap<String, Integer> codeByAddress = new HashMap<>();
+    private String[] addresses = new String[16];
+    private int[] addressRefs = new int[16];
+    private int[] freeCodes = new int[16];
+    private int addressCount;
+    private int freeCount;
+
+    @Override
+    public boolean add(Order order) {
+        if (rowById.containsKey(order.getId())) {
+            return false;
+        }
+        if (rows == ids.length) {
+            int capacity = rows + (rows >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            epochDays = Arrays.copyOf(epochDays, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            addressCodes = Arrays.copyOf(addressCodes, capacity);
+        }
+        write(rows, order);
+        rowById.put(order.getId(), rows);
+        rows++;
+        return true;
+    }
+
+    @Override
+    public Order get(int id) {
+        int row = rowById.get(id);
+        return row == IntIntHashMap.MISSING ? null : view(row);
+    }
+
+    @Override
+    public Order remove(int id) {
+        int row = rowById.remove(id);
+        if (row == IntIntHashMap.MISSING) {
+            return null;
+        }
+        Order removed = view(row);
+        release(addressCodes[row]);
+        int last = --rows;
+        if (row != last) {
+            ids[row] = ids[last];
+            epochDays[row] = epochDays[last];
+            weights[row] = weights[last];
+            addressCodes[row] = addressCodes[last];
+            rowById.put(ids[row], row);
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return rowById.containsKey(id);
+    }
+
+    @Override
+    public void replace(Order order) {
+        int row = rowById.get(order.getId());
+        if (row == IntIntHashMap.MISSING) {
+            add(order);
+            return;
+        }
+        release(addressCodes[row]);
+        write(row, order);
+    }
+
+    @Override
+    public int size() {
+        return rows;
+    }
+
+    @Override
+    public void clear() {
+        rowById.clear();
+        rows = 0;
+        codeByAddress.clear();
+        Arrays.fill(addresses, 0, addressCount, null);
+        Arrays.fill(addressRefs, 0, addressCount, 0);
+        addressCount = 0;
+        freeCount = 0;
+    }
+
+    @Override
+    public List<Order> snapshot() {
+        return new Columns(Arrays.copyOf(ids, rows), Arrays.copyOf(epochDays, rows), Arrays.copyOf(weights, rows),
+                Arrays.copyOf(addressCodes, rows), Arrays.copyOf(addresses, addressCount));
+    }
+
+    @Override
+    public int[] ids() {
+        return Arrays.copyOf(ids, rows);
+    }
+
+    private void write(int row, Order order) {
+        ids[row] = order.getId();
+        epochDays[row] = Math.toIntExact(order.getDate().toEpochDay());
+        weights[row] = order.getWeight();
+        addressCodes[row] = acquire(order.getAddress());
+    }
+
+    private Order view(int row) {
+        int code = addressCodes[row];
+        return new Order(ids[row], code == NO_ADDRESS ? null : addresses[code],
+                LocalDate.ofEpochDay(epochDays[row]), weights[row]);
+    }
+
+    private int acquire(String address) {
+        if (address == null) {
+            return NO_ADDRESS;
+        }
+        Integer existing = codeByAddress.get(address);
+        int code;
+        if (existing != null) {
+            code = existing;
+        } else {
+            if (freeCount > 0) {
+                code = freeCodes[--freeCount];
+            } else {
+                if (addressCount == addresses.length) {
+                    addresses = Arrays.copyOf(addresses, addressCount * 2);
+                    addressRefs = Arrays.copyOf(addressRefs, addressCount * 2);
+                }
+                code = addressCount++;
+            }
+            addresses[code] = address;
+            codeByAddress.put(address, code);
+        }
+        addressRefs[code]++;
+        return code;
+    }
+
+    private void release(int code) {
+        if (code == NO_ADDRESS || --addressRefs[code] > 0) {
+            return;
+        }
+        codeByAddress.remove(addresses[code]);
+        addresses[code] = null;
+        if (freeCount == freeCodes.length) {
+            freeCodes = Arrays.copyOf(freeCodes, freeCount * 2);
+        }
+        freeCodes[freeCount++] = code;
+    }
+
+    private static final class Columns extends AbstractList<Order> implements RandomAccess {
+        private final int[] ids;
+        private final int[] epochDays;
+        private final double[] weights;
+        private final int[] addressCodes;
+        private final String[] addresses;
+
+        Columns(int[] ids, int[] epochDays, double[] weights, int[] addressCodes, String[] addresses) {
+            this.ids = ids;
+            this.epochDays = epochDays;
+            this.weights = weights;
+            this.addressCodes = addressCodes;
+            this.addresses = addresses;
+        }
+
+        @Override
+        public Order get(int index) {
+            int code = addressCodes[index];
+            return new Order(ids[index], code == NO_ADDRESS ? null : addresses[code],
+                    LocalDate.ofEpochDay(epochDays[index]), weights[index]);
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
+}
@@ -1,189 +1,1614 @@
 import java.io.*;
+import java.nio.file.Files;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.Spliterators;
+import java.util.Spliterator;
+import java.util.NoSuchElementException;
+import java.util.NavigableMap;
+import java.util.Iterator;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
-public class Database implements Serializable {
-    private HashMap<Integer, Order> ordersMap;
-    private HashMap<String, List<Order>> addressIndex;
-    private HashMap<String, List<Order>> dateIndex;
-    private HashMap<Double, List<Order>> weightIndex;
+public class Database {
+    private OrderStore store;
+    private HashMap<String, IntHashSet> addressIndex;
+    private AddressTextIndex addressText = new AddressTextIndex();
+    private SortedIntSet orderedIds = new SortedIntSet();
+    private TreeMap<LocalDate, IntHashSet> dateIndex;
+    private TreeMap<Double, IntHashSet> weightIndex;
+    private RangeHistogram dateStats = new RangeHistogram();
+    private RangeHistogram weightStats = new RangeHistogram();
+    private Aggregate totals = new Aggregate();
+    private HashMap<LocalDate, Aggregate> dailyTotals = new HashMap<>();
+    private HashMap<YearMonth, Aggregate> monthlyTotals = new HashMap<>();
+    private HashMap<String, Aggregate> addressTotals = new HashMap<>();
+    private QuantileSketch weightSketch = new QuantileSketch();
+    private HashMap<YearMonth, QuantileSketch> monthlySketches = new HashMap<>();
+    private HashMap<String, QuantileSketch> addressSketches = new HashMap<>();
     private String filePath;
+    private Journal journal;
+    private boolean journalEnabled;
+    private boolean replaying;
+    private boolean bulkLoading;
+    private Future<?> pendingCheckpoint;
+    private Journal.SyncPolicy syncPolicy = Journal.SyncPolicy.OS;
+    private long syncIntervalMillis;
+    private Journal unsyncedJournal;
+    private int unsyncedSequence;
+    private volatile OrderFile.Format fileFormat = OrderFile.Format.BINARY;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final StampedLock stampedLock = new StampedLock();
+    private long writeStamp;
+    private int checkpointThreshold = 100_000;
+    private final DatabaseMetrics metrics = new DatabaseMetrics(this::gauges);
+    private final List<DatabaseListener> listeners = new CopyOnWriteArrayList<>();
+    private final SnapshotManager snapshots = new SnapshotManager();
+    private final ConcurrentLinkedQueue<DatabaseChange> changes = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock notifyLock = new ReentrantLock();
+    private DatabaseChange pendingChange;
+
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
+    private static final int BULK_LOAD_THRESHOLD = 10_000;
+    private static final int EXPORT_WINDOW = 1000;
+    private static final int STREAM_PAGE = 1024;
+    private static final int MAX_ROWS_PER_SHEET = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+    private static final LocalDate EXCEL_FIRST_SERIAL_DATE = LocalDate.of(1900, 3, 1);
+    private static final long EXCEL_EPOCH_OFFSET = 25569;
+
+    private static final ExecutorService checkpointExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "database-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public Database() {
-        this.ordersMap = new HashMap<>();
+        this(new HeapOrderStore());
+    }
+
+    public Database(OrderStore store) {
+        this.store = store;
         this.addressIndex = new HashMap<>();
-        this.dateIndex = new HashMap<>();
-        this.weightIndex = new HashMap<>();
+        this.dateIndex = new TreeMap<>();
+        this.weightIndex = new TreeMap<>();
     }
 
     public void setFilePath(String filePath) {
-        this.filePath = filePath;
+        beginWrite();
+        try {
+            if (journal != null && !String.valueOf(filePath).equals(String.valueOf(this.filePath))) {
+                closeJournal();
+            }
+            this.filePath = filePath;
+        } finally {
+            endWrite();
+        }
+    }
+
+    public void setJournalEnabled(boolean journalEnabled) {
+        beginWrite();
+        try {
+            this.journalEnabled = journalEnabled;
+            if (!journalEnabled) {
+                closeJournal();
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    public void setSyncPolicy(Journal.SyncPolicy syncPolicy, long syncIntervalMillis) {
+        beginWrite();
+        try {
+            this.syncPolicy = syncPolicy;
+            this.syncIntervalMillis = syncIntervalMillis;
+            if (journal != null) {
+                File log = journal.getFile();
+                journal.close();
+                journal = new Journal(log, syncPolicy, syncIntervalMillis);
+            }
+        } catch (IOException e) {
+            journal = null;
+            throw new UncheckedIOException("Failed to reopen journal " + filePath + ".log", e);
+        } finally {
+            endWrite();
+        }
+    }
+
+    public Journal.SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    public OrderFile.Format getFileFormat() {
+        return fileFormat;
+    }
+
+    public void setFileFormat(OrderFile.Format fileFormat) {
+        this.fileFormat = fileFormat;
+    }
+
+    public void setCheckpointThreshold(int checkpointThreshold) {
+        this.checkpointThreshold = checkpointThreshold;
+    }
+
+    public void addListener(DatabaseListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DatabaseListener listener) {
+        listeners.remove(listener);
     }
 
     public boolean addRecord(Order order) {
-        if (ordersMap.containsKey(order.getId())) {
-            return false;
+        long start = metrics.start();
+        beginWrite();
+        try {
+            if (store.contains(order.getId())) {
+                return false;
+            }
+            log(Journal.ADD, order);
+            store.add(order);
+            remember(order.getId(), null);
+            if (!bulkLoading) {
+                orderedIds.add(order.getId());
+                indexAddress(order.getAddress(), order.getId());
+                addToIndex(dateIndex, order.getDate(), order.getId());
+                addToIndex(weightIndex, order.getWeight(), order.getId());
+                dateStats.add(RangeHistogram.dateBucket(order.getDate()), 1);
+                weightStats.add(RangeHistogram.weightBucket(order.getWeight()), 1);
+                addToTotals(order);
+            }
+            DatabaseChange change = pendingChange();
+            if (change != null) {
+                change.added(order.getId());
+            }
+            checkpointIfDue();
+            return true;
+        } finally {
+            endWrite();
+            metrics.record(DatabaseMetrics.Op.ADD, start);
         }
-        ordersMap.put(order.getId(), order);
-        addressIndex.computeIfAbsent(order.getAddress(), k -> new ArrayList<>()).add(order);
-        dateIndex.computeIfAbsent(((order.getDate()).format(DateTimeFormatter.ofPattern("dd.MM.yyyy"))), k -> new ArrayList<>()).add(order);
-        weightIndex.computeIfAbsent(order.getWeight(), k -> new ArrayList<>()).add(order);
-        return true;
     }
 
-    public void removeRecord(int id) {
-        Order order = ordersMap.remove(id);
-        if (order != null) {
-            List<Order> ordersAtAddress = addressIndex.get(order.getAddress());
-            if (ordersAtAddress != null) {
-                ordersAtAddress.remove(order);
-                if (ordersAtAddress.isEmpty()) {
-                    addressIndex.remove(order.getAddress());
+    public int addRecords(Collection<Order> orders) {
+        return addRecords(orders, null);
+    }
+
+    public int addRecords(Collection<Order> orders, Consumer<Order> rejected) {
+        beginWrite();
+        try {
+            boolean bulk = !bulkLoading && orders.size() > Math.max(BULK_LOAD_THRESHOLD, store.size());
+            if (bulk) {
+                beginBulkLoad();
+            }
+            int added = 0;
+            try {
+                for (Order order : orders) {
+                    if (addRecord(order)) {
+                        added++;
+                    } else if (rejected != null) {
+                        rejected.accept(order);
+                    }
+                }
+            } finally {
+                if (bulk) {
+                    endBulkLoad();
                 }
             }
-            List<Order> ordersAtDate = dateIndex.get(order.getDate());
-            if (ordersAtDate != null) {
-                ordersAtDate.remove(order);
-                if (ordersAtDate.isEmpty()) {
-                    dateIndex.remove(order.getDate());
+            return added;
+        } finally {
+            endWrite();
+        }
+    }
+
+    public int removeRecords(Collection<Integer> ids) {
+        beginWrite();
+        try {
+            int removed = 0;
+            for (int id : ids) {
+                if (store.contains(id)) {
+                    removeRecord(id);
+                    removed++;
                 }
             }
-            List<Order> ordersAtWeight = weightIndex.get(order.getWeight());
-            if (ordersAtWeight != null) {
-                ordersAtWeight.remove(order);
-                if (ordersAtWeight.isEmpty()) {
-                    weightIndex.remove(order.getWeight());
+            return removed;
+        } finally {
+            endWrite();
+        }
+    }
+
+    public void beginBulkLoad() {
+        beginWrite();
+        bulkLoading = true;
+    }
+
+    public void endBulkLoad() {
+        try {
+            if (bulkLoading) {
+                bulkLoading = false;
+                rebuildIndexes();
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    private void beginWrite() {
+        writeLock.lock();
+        if (writeLock.getHoldCount() == 1) {
+            writeStamp = stampedLock.writeLock();
+        }
+    }
+
+    private void endWrite() {
+        boolean outermost = writeLock.getHoldCount() == 1;
+        Journal syncJournal = null;
+        int syncSequence = 0;
+        if (outermost) {
+            if (pendingChange != null) {
+                changes.add(pendingChange);
+                pendingChange = null;
+            }
+            syncJournal = unsyncedJournal;
+            syncSequence = unsyncedSequence;
+            unsyncedJournal = null;
+            stampedLock.unlockWrite(writeStamp);
+        }
+        writeLock.unlock();
+        if (syncJournal != null) {
+            try {
+                syncJournal.sync(syncSequence);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to sync journal " + syncJournal.getFile(), e);
+            }
+        }
+        if (outermost && !changes.isEmpty()) {
+            fireChanges();
+        }
+    }
+
+    private DatabaseChange pendingChange() {
+        if (pendingChange == null && !listeners.isEmpty()) {
+            pendingChange = new DatabaseChange();
+        }
+        return pendingChange;
+    }
+
+    private void fireChanges() {
+        notifyLock.lock();
+        try {
+            DatabaseChange change;
+            while ((change = changes.poll()) != null) {
+                if (change.isEmpty()) {
+                    continue;
+                }
+                for (DatabaseListener listener : listeners) {
+                    try {
+                        listener.databaseChanged(change);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
                 }
             }
+        } finally {
+            notifyLock.unlock();
         }
     }
 
-    public void removeRecordsByAddress(String address) {
-        List<Order> ordersToRemove = addressIndex.get(address);
-        if (ordersToRemove != null) {
-            for (Order order : new ArrayList<>(ordersToRemove)) {
-                removeRecord(order.getId());
+    private <T> T read(Supplier<T> query) {
+        long stamp = stampedLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = query.get();
+                if (stampedLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // torn read of a structure that a writer was changing; retry under the read lock
             }
         }
+        return readLocked(query);
     }
 
-    public void removeRecordsByDate(String date) {
-        List<Order> ordersToRemove = dateIndex.get(date);
-        if (ordersToRemove != null) {
-            for (Order order : new ArrayList<>(ordersToRemove)) {
-                removeRecord(order.getId());
+    private <T> T readLocked(Supplier<T> query) {
+        if (writeLock.isHeldByCurrentThread()) {
+            return query.get();
+        }
+        long stamp = stampedLock.readLock();
+        try {
+            return query.get();
+        } finally {
+            stampedLock.unlockRead(stamp);
+        }
+    }
+
+    private <T> T findLocked(Supplier<T> query) {
+        long start = metrics.start();
+        try {
+            return readLocked(query);
+        } finally {
+            metrics.record(DatabaseMetrics.Op.FIND, start);
+        }
+    }
+
+    private void rebuildIndexes() {
+        List<Order> orders = store.snapshot();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int grain = Math.max(50_000, orders.size() / (pool.getParallelism() * 4));
+        ForkJoinTask<HashMap<String, IntHashSet>> addresses = pool.submit(new IndexBuilder<>(orders, 0, orders.size(), grain, Order::getAddress));
+        ForkJoinTask<HashMap<LocalDate, IntHashSet>> dates = pool.submit(new IndexBuilder<>(orders, 0, orders.size(), grain, Order::getDate));
+        ForkJoinTask<HashMap<Double, IntHashSet>> weights = pool.submit(new IndexBuilder<>(orders, 0, orders.size(), grain, Order::getWeight));
+        ForkJoinTask<?> aggregates = pool.submit(() -> {
+            clearTotals();
+            for (Order order : orders) {
+                addToTotals(order);
             }
+        });
+        orderedIds = SortedIntSet.of(store.ids());
+        addressIndex = addresses.join();
+        AddressTextIndex text = new AddressTextIndex();
+        for (String address : addressIndex.keySet()) {
+            text.add(address);
         }
+        addressText = text;
+        dateIndex = new TreeMap<>(dates.join());
+        weightIndex = new TreeMap<>(weights.join());
+        dateStats = RangeHistogram.of(dateIndex, RangeHistogram::dateBucket);
+        weightStats = RangeHistogram.of(weightIndex, RangeHistogram::weightBucket);
+        aggregates.join();
     }
 
-    public void removeRecordsByWeight(double weight) {
-        List<Order> ordersToRemove = weightIndex.get(weight);
-        if (ordersToRemove != null) {
-            for (Order order : new ArrayList<>(ordersToRemove)) {
-                removeRecord(order.getId());
+    @SuppressWarnings("serial")
+    private static final class IndexBuilder<K> extends RecursiveTask<HashMap<K, IntHashSet>> {
+        private final List<Order> orders;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final Function<Order, K> key;
+
+        IndexBuilder(List<Order> orders, int from, int to, int grain, Function<Order, K> key) {
+            this.orders = orders;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.key = key;
+        }
+
+        @Override
+        protected HashMap<K, IntHashSet> compute() {
+            if (to - from <= grain) {
+                HashMap<K, IntHashSet> index = new HashMap<>();
+                for (int i = from; i < to; i++) {
+                    Order order = orders.get(i);
+                    addToIndex(index, key.apply(order), order.getId());
+                }
+                return index;
+            }
+            int mid = (from + to) >>> 1;
+            IndexBuilder<K> left = new IndexBuilder<>(orders, from, mid, grain, key);
+            left.fork();
+            HashMap<K, IntHashSet> right = new IndexBuilder<>(orders, mid, to, grain, key).compute();
+            HashMap<K, IntHashSet> merged = left.join();
+            if (merged.size() < right.size()) {
+                HashMap<K, IntHashSet> swap = merged;
+                merged = right;
+                right = swap;
+            }
+            for (Map.Entry<K, IntHashSet> entry : right.entrySet()) {
+                IntHashSet ids = merged.get(entry.getKey());
+                if (ids == null) {
+                    merged.put(entry.getKey(), entry.getValue());
+                } else {
+                    ids.addAll(entry.getValue());
+                }
+            }
+            return merged;
+        }
+    }
+
+    public void removeRecord(int id) {
+        long start = metrics.start();
+        beginWrite();
+        try {
+            Order order = store.get(id);
+            if (order != null) {
+                log(Journal.REMOVE, order);
+                store.remove(id);
+                orderedIds.remove(id);
+                remember(id, order);
+                DatabaseChange change = pendingChange();
+                if (change != null) {
+                    change.removed(id);
+                }
+                unindexAddress(order.getAddress(), id);
+                removeFromIndex(dateIndex, order.getDate(), id);
+                removeFromIndex(weightIndex, order.getWeight(), id);
+                dateStats.remove(RangeHistogram.dateBucket(order.getDate()), 1);
+                weightStats.remove(RangeHistogram.weightBucket(order.getWeight()), 1);
+                if (!bulkLoading) {
+                    removeFromTotals(order);
+                }
+                checkpointIfDue();
+            }
+        } finally {
+            endWrite();
+            metrics.record(DatabaseMetrics.Op.REMOVE, start);
+        }
+    }
+
+    private void addToTotals(Order order) {
+        double weight = order.getWeight();
+        totals.add(weight);
+        dailyTotals.computeIfAbsent(order.getDate(), k -> new Aggregate()).add(weight);
+        monthlyTotals.computeIfAbsent(YearMonth.from(order.getDate()), k -> new Aggregate()).add(weight);
+        addressTotals.computeIfAbsent(order.getAddress(), k -> new Aggregate()).add(weight);
+        weightSketch.add(weight);
+        monthlySketches.computeIfAbsent(YearMonth.from(order.getDate()), k -> new QuantileSketch()).add(weight);
+        addressSketches.computeIfAbsent(order.getAddress(), k -> new QuantileSketch()).add(weight);
+    }
+
+    private void removeFromTotals(Order order) {
+        double weight = order.getWeight();
+        LocalDate date = order.getDate();
+        YearMonth month = YearMonth.from(date);
+        if (totals.remove(weight)) {
+            Aggregate lowest = weightExtreme(weightIndex, order.getId());
+            Aggregate highest = weightExtreme(weightIndex.descendingMap(), order.getId());
+            totals.setExtremes(lowest.getMin(), lowest.getCount(), highest.getMax(), highest.getCount());
+        }
+        removeFromTotals(dailyTotals, date, weight, order.getId(), () -> List.of(dateIndex.get(date)));
+        removeFromTotals(monthlyTotals, month, weight, order.getId(),
+                () -> dateIndex.subMap(month.atDay(1), true, month.atEndOfMonth(), true).values());
+        removeFromTotals(addressTotals, order.getAddress(), weight, order.getId(),
+                () -> List.of(addressIndex.get(order.getAddress())));
+        weightSketch.remove(weight);
+        removeFromSketch(monthlySketches, month, weight);
+        removeFromSketch(addressSketches, order.getAddress(), weight);
+    }
+
+    private static <K> void removeFromSketch(Map<K, QuantileSketch> sketches, K key, double weight) {
+        QuantileSketch sketch = sketches.get(key);
+        if (sketch != null) {
+            sketch.remove(weight);
+            if (sketch.getCount() == 0) {
+                sketches.remove(key);
+            }
+        }
+    }
+
+    private static Aggregate weightExtreme(NavigableMap<Double, IntHashSet> weights, int excluded) {
+        Aggregate extreme = new Aggregate();
+        for (Map.Entry<Double, IntHashSet> entry : weights.entrySet()) {
+            long count = entry.getValue().size() - (entry.getValue().contains(excluded) ? 1 : 0);
+            if (count > 0) {
+                extreme.setExtremes(entry.getKey(), count, entry.getKey(), count);
+                break;
+            }
+        }
+        return extreme;
+    }
+
+    private <K> void removeFromTotals(Map<K, Aggregate> groups, K key, double weight, int excluded,
+                                      Supplier<Collection<IntHashSet>> members) {
+        Aggregate aggregate = groups.get(key);
+        if (aggregate == null) {
+            return;
+        }
+        boolean extremeRemoved = aggregate.remove(weight);
+        if (aggregate.getCount() == 0) {
+            groups.remove(key);
+        } else if (extremeRemoved) {
+            Aggregate rescanned = new Aggregate();
+            for (IntHashSet ids : members.get()) {
+                ids.forEach(id -> {
+                    if (id != excluded) {
+                        rescanned.add(store.get(id).getWeight());
+                    }
+                });
             }
+            aggregate.setExtremes(rescanned);
+        }
+    }
+
+    private void clearTotals() {
+        totals.clear();
+        dailyTotals.clear();
+        monthlyTotals.clear();
+        addressTotals.clear();
+        weightSketch.clear();
+        monthlySketches.clear();
+        addressSketches.clear();
+    }
+
+    private static <K> void addToIndex(Map<K, IntHashSet> index, K key, int id) {
+        index.computeIfAbsent(key, k -> new IntHashSet()).add(id);
+    }
+
+    private void indexAddress(String address, int id) {
+        IntHashSet ids = addressIndex.get(address);
+        if (ids == null) {
+            ids = new IntHashSet();
+            addressIndex.put(address, ids);
+            addressText.add(address);
+        }
+        ids.add(id);
+    }
+
+    private void unindexAddress(String address, int id) {
+        removeFromIndex(addressIndex, address, id);
+        if (!addressIndex.containsKey(address)) {
+            addressText.remove(address);
+        }
+    }
+
+    private static <K> void removeFromIndex(Map<K, IntHashSet> index, K key, int id) {
+        IntHashSet ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private void removeAll(IntHashSet ids) {
+        if (ids != null) {
+            for (int id : ids.toArray()) {
+                removeRecord(id);
+            }
+        }
+    }
+
+    public void removeRecordsByAddress(String address) {
+        beginWrite();
+        try {
+            removeAll(addressIndex.get(address));
+        } finally {
+            endWrite();
+        }
+    }
+
+    public void removeRecordsByDate(String date) {
+        beginWrite();
+        try {
+            removeAll(dateIndex.get(LocalDate.parse(date, DATE_FORMAT)));
+        } finally {
+            endWrite();
+        }
+    }
+
+    public void removeRecordsByWeight(double weight) {
+        beginWrite();
+        try {
+            removeAll(weightIndex.get(weight));
+        } finally {
+            endWrite();
         }
     }
 
     public Order findById(int id) {
-        return ordersMap.get(id);
+        return findLocked(() -> store.get(id));
+    }
+
+    public boolean tryFindByIds(int[] ids, int from, Order[] orders, long timeout, TimeUnit unit) throws InterruptedException {
+        long stamp = 0;
+        if (!writeLock.isHeldByCurrentThread()) {
+            stamp = stampedLock.tryReadLock(timeout, unit);
+            if (stamp == 0) {
+                return false;
+            }
+        }
+        try {
+            for (int i = 0; i < orders.length; i++) {
+                orders[i] = store.get(ids[from + i]);
+            }
+            return true;
+        } finally {
+            if (stamp != 0) {
+                stampedLock.unlockRead(stamp);
+            }
+        }
     }
 
     public List<Order> findByAddress(String address) {
-        return addressIndex.getOrDefault(address, new ArrayList<>());
+        return findLocked(() -> toOrders(addressIndex.get(address)));
+    }
+
+    public List<String> suggestAddresses(String prefix, int limit) {
+        return findLocked(() -> addressText.prefix(prefix, limit));
+    }
+
+    public List<Order> findByAddressPrefix(String prefix) {
+        return findLocked(() -> addressOrders(addressText.prefix(prefix, Integer.MAX_VALUE)));
+    }
+
+    public List<Order> findByAddressContaining(String text) {
+        return findLocked(() -> addressOrders(addressText.containing(text, Integer.MAX_VALUE)));
+    }
+
+    public List<Order> findByAddressFuzzy(String text, int maxEdits) {
+        return findLocked(() -> addressOrders(addressText.fuzzy(text, maxEdits, Integer.MAX_VALUE)));
+    }
+
+    private List<Order> addressOrders(List<String> addresses) {
+        List<IntHashSet> buckets = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            IntHashSet ids = addressIndex.get(address);
+            if (ids != null) {
+                buckets.add(ids);
+            }
+        }
+        return flatten(buckets);
     }
 
     public List<Order> findByDate(String date) {
-        return dateIndex.getOrDefault(date, new ArrayList<>());
+        return findByDate(LocalDate.parse(date, DATE_FORMAT));
+    }
+
+    public List<Order> findByDate(LocalDate date) {
+        return findLocked(() -> toOrders(dateIndex.get(date)));
     }
 
     public List<Order> findByWeight(double weight) {
-        return weightIndex.getOrDefault(weight, new ArrayList<>());
+        return findLocked(() -> toOrders(weightIndex.get(weight)));
+    }
+
+    public List<Order> findByDateRange(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return new ArrayList<>();
+        }
+        return findLocked(() -> flatten(dateIndex.subMap(from, true, to, true).values()));
+    }
+
+    public List<Order> findByWeightRange(double min, double max) {
+        if (min > max) {
+            return new ArrayList<>();
+        }
+        return findLocked(() -> flatten(weightIndex.subMap(min, true, max, true).values()));
+    }
+
+    public List<Order> findByDateFloor(LocalDate date) {
+        return findLocked(() -> entryValue(dateIndex.floorEntry(date)));
+    }
+
+    public List<Order> findByDateCeiling(LocalDate date) {
+        return findLocked(() -> entryValue(dateIndex.ceilingEntry(date)));
+    }
+
+    public List<Order> findByWeightFloor(double weight) {
+        return findLocked(() -> entryValue(weightIndex.floorEntry(weight)));
+    }
+
+    public List<Order> findByWeightCeiling(double weight) {
+        return findLocked(() -> entryValue(weightIndex.ceilingEntry(weight)));
+    }
+
+    public List<Order> top(int k, PageRequest.Sort by) {
+        return page(PageRequest.first(checkK(k)).orderBy(by).descending());
+    }
+
+    public List<Order> bottom(int k, PageRequest.Sort by) {
+        return page(PageRequest.first(checkK(k)).orderBy(by));
+    }
+
+    public List<Order> top(int k, PageRequest.Sort by, String address) {
+        return findLocked(() -> select(List.of(addressIndex.getOrDefault(address, new IntHashSet(0))), checkK(k), ranking(by, true)));
+    }
+
+    public List<Order> bottom(int k, PageRequest.Sort by, String address) {
+        return findLocked(() -> select(List.of(addressIndex.getOrDefault(address, new IntHashSet(0))), checkK(k), ranking(by, false)));
+    }
+
+    public List<Order> top(int k, PageRequest.Sort by, LocalDate from, LocalDate to) {
+        return findLocked(() -> extremesBetween(checkK(k), by, true, from, to));
+    }
+
+    public List<Order> bottom(int k, PageRequest.Sort by, LocalDate from, LocalDate to) {
+        return findLocked(() -> extremesBetween(checkK(k), by, false, from, to));
+    }
+
+    public QuantileSketch getWeightSketch() {
+        return readLocked(() -> weightSketch.copy());
+    }
+
+    public QuantileSketch getWeightSketch(YearMonth from, YearMonth to) {
+        return readLocked(() -> {
+            QuantileSketch merged = new QuantileSketch();
+            for (Map.Entry<YearMonth, QuantileSketch> entry : monthlySketches.entrySet()) {
+                if (!entry.getKey().isBefore(from) && !entry.getKey().isAfter(to)) {
+                    merged.merge(entry.getValue());
+                }
+            }
+            return merged;
+        });
+    }
+
+    public double weightQuantile(double q) {
+        return findLocked(() -> weightSketch.quantile(q));
+    }
+
+    public double weightQuantile(double q, YearMonth from, YearMonth to) {
+        return getWeightSketch(from, to).quantile(q);
+    }
+
+    public double weightQuantile(double q, String address) {
+        checkQuantile(q);
+        return findLocked(() -> {
+            QuantileSketch sketch = addressSketches.get(address);
+            return sketch == null ? Double.NaN : sketch.quantile(q);
+        });
+    }
+
+    public LocalDate dateQuantile(double q) {
+        checkQuantile(q);
+        return findLocked(() -> {
+            long rank = (long) Math.floor(q * (store.size() - 1));
+            long seen = 0;
+            for (Map.Entry<LocalDate, IntHashSet> entry : dateIndex.entrySet()) {
+                seen += entry.getValue().size();
+                if (seen > rank) {
+                    return entry.getKey();
+                }
+            }
+            return null;
+        });
+    }
+
+    private static int checkK(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        return k;
+    }
+
+    private static void checkQuantile(double q) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        }
+    }
+
+    static Comparator<Order> ranking(PageRequest.Sort by, boolean highest) {
+        Comparator<Order> order;
+        switch (by) {
+            case DATE:
+                order = Comparator.comparing(Order::getDate).thenComparingInt(Order::getId);
+                break;
+            case WEIGHT:
+                order = Comparator.comparingDouble(Order::getWeight).thenComparingInt(Order::getId);
+                break;
+            default:
+                order = Comparator.comparingInt(Order::getId);
+        }
+        return highest ? order.reversed() : order;
+    }
+
+    private List<Order> select(Collection<IntHashSet> buckets, int k, Comparator<Order> ranking) {
+        if (k == 0) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<Order> kept = new PriorityQueue<>(k + 1, ranking.reversed());
+        for (IntHashSet ids : buckets) {
+            ids.forEach(id -> {
+                Order order = store.get(id);
+                if (kept.size() < k) {
+                    kept.add(order);
+                } else if (ranking.compare(order, kept.peek()) < 0) {
+                    kept.poll();
+                    kept.add(order);
+                }
+            });
+        }
+        if (kept.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Order> result = new ArrayList<>(kept);
+        result.sort(ranking);
+        return Collections.unmodifiableList(result);
+    }
+
+    private List<Order> extremesBetween(int k, PageRequest.Sort by, boolean highest, LocalDate from, LocalDate to) {
+        if (k == 0 || from.isAfter(to)) {
+            return Collections.emptyList();
+        }
+        NavigableMap<LocalDate, IntHashSet> range = dateIndex.subMap(from, true, to, true);
+        List<Order> result = new ArrayList<>(Math.min(k, store.size()));
+        if (by == PageRequest.Sort.DATE) {
+            bucketPage(range, highest, null, 0, 0, k, result);
+        } else {
+            long matching = 0;
+            for (IntHashSet ids : range.values()) {
+                matching += ids.size();
+            }
+            if (matching * matching <= (long) k * store.size()) {
+                return select(range.values(), k, ranking(by, highest));
+            }
+            Predicate<Order> inRange = order -> !order.getDate().isBefore(from) && !order.getDate().isAfter(to);
+            if (by == PageRequest.Sort.WEIGHT) {
+                for (IntHashSet bucket : (highest ? weightIndex.descendingMap() : weightIndex).values()) {
+                    int[] ids = bucket.toSortedArray();
+                    for (int i = 0; i < ids.length && result.size() < k; i++) {
+                        Order order = store.get(highest ? ids[ids.length - 1 - i] : ids[i]);
+                        if (inRange.test(order)) {
+                            result.add(order);
+                        }
+                    }
+                    if (result.size() >= k) {
+                        break;
+                    }
+                }
+            } else {
+                int size = orderedIds.size();
+                for (int i = 0; i < size && result.size() < k; i++) {
+                    Order order = store.get(orderedIds.get(highest ? size - 1 - i : i));
+                    if (inRange.test(order)) {
+                        result.add(order);
+                    }
+                }
+            }
+        }
+        return result.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    public List<Order> getRecordsOrderedByDate(boolean descending) {
+        return findLocked(() -> flatten((descending ? dateIndex.descendingMap() : dateIndex).values()));
+    }
+
+    public List<Order> getRecordsOrderedByWeight(boolean descending) {
+        return findLocked(() -> flatten((descending ? weightIndex.descendingMap() : weightIndex).values()));
+    }
+
+    public Aggregate getTotals() {
+        return read(() -> totals.copy());
+    }
+
+    public Aggregate getDailyTotals(LocalDate date) {
+        return readLocked(() -> copyOf(dailyTotals.get(date)));
+    }
+
+    public Aggregate getMonthlyTotals(YearMonth month) {
+        return readLocked(() -> copyOf(monthlyTotals.get(month)));
+    }
+
+    public Aggregate getAddressTotals(String address) {
+        return readLocked(() -> copyOf(addressTotals.get(address)));
+    }
+
+    public TreeMap<LocalDate, Aggregate> getDailyTotals() {
+        return readLocked(() -> copyAll(dailyTotals, new TreeMap<>()));
+    }
+
+    public TreeMap<YearMonth, Aggregate> getMonthlyTotals() {
+        return readLocked(() -> copyAll(monthlyTotals, new TreeMap<>()));
+    }
+
+    public TreeMap<String, Aggregate> getAddressTotals() {
+        return readLocked(() -> copyAll(addressTotals, new TreeMap<>(Comparator.nullsFirst(Comparator.<String>naturalOrder()))));
+    }
+
+    private static Aggregate copyOf(Aggregate aggregate) {
+        return aggregate == null ? new Aggregate() : aggregate.copy();
+    }
+
+    private static <K> TreeMap<K, Aggregate> copyAll(Map<K, Aggregate> groups, TreeMap<K, Aggregate> target) {
+        for (Map.Entry<K, Aggregate> entry : groups.entrySet()) {
+            target.put(entry.getKey(), entry.getValue().copy());
+        }
+        return target;
+    }
+
+    public Stream<Order> query(Query query) {
+        int[] ids = readLocked(() -> query.candidates(this).toArray());
+        return Arrays.stream(ids).mapToObj(this::findById).filter(order -> order != null && query.test(order));
+    }
+
+    public String explain(Query query) {
+        return readLocked(() -> query.explain(this));
+    }
+
+    int recordCount() {
+        return store.size();
+    }
+
+    int addressCardinality(String address) {
+        IntHashSet ids = addressIndex.get(address);
+        return ids == null ? 0 : ids.size();
+    }
+
+    long dateCardinality(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return 0;
+        }
+        return dateStats.count(RangeHistogram.dateBucket(from), RangeHistogram.dateBucket(to));
+    }
+
+    long weightCardinality(double min, double max) {
+        if (min > max) {
+            return 0;
+        }
+        return weightStats.count(RangeHistogram.weightBucket(min), RangeHistogram.weightBucket(max));
+    }
+
+    IntHashSet addressIds(String address) {
+        IntHashSet ids = addressIndex.get(address);
+        return ids == null ? new IntHashSet() : ids;
+    }
+
+    IntHashSet dateIds(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return new IntHashSet();
+        }
+        return union(dateIndex.subMap(from, true, to, true).values());
+    }
+
+    IntHashSet weightIds(double min, boolean minInclusive, double max, boolean maxInclusive) {
+        if (min > max || (min == max && !(minInclusive && maxInclusive))) {
+            return new IntHashSet();
+        }
+        return union(weightIndex.subMap(min, minInclusive, max, maxInclusive).values());
+    }
+
+    private static IntHashSet union(Collection<IntHashSet> buckets) {
+        if (buckets.size() == 1) {
+            return buckets.iterator().next();
+        }
+        int size = 0;
+        for (IntHashSet ids : buckets) {
+            size += ids.size();
+        }
+        IntHashSet result = new IntHashSet(size);
+        for (IntHashSet ids : buckets) {
+            result.addAll(ids);
+        }
+        return result;
+    }
+
+    private List<Order> toOrders(IntHashSet ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Order> result = new ArrayList<>(ids.size());
+        ids.forEach(id -> result.add(store.get(id)));
+        return Collections.unmodifiableList(result);
+    }
+
+    private List<Order> flatten(Collection<IntHashSet> buckets) {
+        List<Order> result = new ArrayList<>();
+        for (IntHashSet ids : buckets) {
+            ids.forEach(id -> result.add(store.get(id)));
+        }
+        return result.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    private <K> List<Order> entryValue(Map.Entry<K, IntHashSet> entry) {
+        return toOrders(entry == null ? null : entry.getValue());
     }
 
     public boolean editRecord(int id, String newAddress, LocalDate newDate, double newWeight) {
-        Order order = ordersMap.get(id);
-        if (order == null) {
-            return false;
+        long start = metrics.start();
+        beginWrite();
+        try {
+            Order order = store.get(id);
+            if (order == null) {
+                return false;
+            }
+            Order updated = new Order(id, newAddress, newDate, newWeight);
+            log(Journal.EDIT, updated);
+            if (!bulkLoading) {
+                removeFromTotals(order);
+            }
+            if (!Objects.equals(order.getAddress(), newAddress)) {
+                unindexAddress(order.getAddress(), id);
+                indexAddress(newAddress, id);
+            }
+            if (!order.getDate().equals(newDate)) {
+                removeFromIndex(dateIndex, order.getDate(), id);
+                addToIndex(dateIndex, newDate, id);
+                dateStats.remove(RangeHistogram.dateBucket(order.getDate()), 1);
+                dateStats.add(RangeHistogram.dateBucket(newDate), 1);
+            }
+            if (Double.compare(order.getWeight(), newWeight) != 0) {
+                removeFromIndex(weightIndex, order.getWeight(), id);
+                addToIndex(weightIndex, newWeight, id);
+                weightStats.remove(RangeHistogram.weightBucket(order.getWeight()), 1);
+                weightStats.add(RangeHistogram.weightBucket(newWeight), 1);
+            }
+            store.replace(updated);
+            remember(id, order);
+            if (!bulkLoading) {
+                addToTotals(updated);
+            }
+            DatabaseChange change = pendingChange();
+            if (change != null) {
+                change.updated(id);
+            }
+            checkpointIfDue();
+            return true;
+        } finally {
+            endWrite();
+            metrics.record(DatabaseMetrics.Op.EDIT, start);
+        }
+    }
+
+    void applyPut(Order order) {
+        if (store.contains(order.getId())) {
+            editRecord(order.getId(), order.getAddress(), order.getDate(), order.getWeight());
+        } else {
+            addRecord(order);
+        }
+    }
+
+    private void remember(int id, Order before) {
+        if (snapshots.isRecording()) {
+            snapshots.record(id, before);
+        }
+    }
+
+    private void log(byte op, Order order) {
+        if (!journalEnabled || replaying || filePath == null) {
+            return;
+        }
+        try {
+            if (journal == null) {
+                checkpoint();
+            }
+            switch (op) {
+                case Journal.ADD:
+                    journal.logAdd(order);
+                    break;
+                case Journal.EDIT:
+                    journal.logEdit(order);
+                    break;
+                case Journal.REMOVE:
+                    journal.logRemove(order.getId());
+                    break;
+                default:
+                    journal.logClear();
+            }
+            if (journal.getSyncPolicy() == Journal.SyncPolicy.EVERY_COMMIT) {
+                unsyncedJournal = journal;
+                unsyncedSequence = journal.size();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write journal " + filePath + ".log", e);
+        }
+    }
+
+    private void checkpointIfDue() {
+        if (journal == null || replaying || journal.size() < checkpointThreshold) {
+            return;
+        }
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to checkpoint " + filePath, e);
+        }
+    }
+
+    public Future<?> checkpoint() throws IOException {
+        beginWrite();
+        try {
+            return startCheckpoint();
+        } finally {
+            endWrite();
+        }
+    }
+
+    private Future<?> startCheckpoint() throws IOException {
+        if (filePath == null) {
+            throw new IllegalStateException("No file to checkpoint; save or load a database first.");
+        }
+        awaitCheckpoint();
+        List<Order> snapshot = store.snapshot();
+        File log = new File(filePath + ".log");
+        File oldLog = new File(filePath + ".log.old");
+        closeJournal();
+        if (log.exists()) {
+            if (oldLog.exists()) {
+                Journal.appendTo(log, oldLog);
+                Files.delete(log.toPath());
+            } else {
+                Files.move(log.toPath(), oldLog.toPath());
+            }
+        }
+        if (journalEnabled) {
+            journal = new Journal(log, syncPolicy, syncIntervalMillis);
+        }
+        File backup = new File(filePath + ".bak");
+        OrderFile.Format format = fileFormat;
+        Future<?> checkpoint = checkpointExecutor.submit(() -> {
+            OrderFile.writeAtomically(snapshot, backup, format);
+            Files.deleteIfExists(oldLog.toPath());
+            return null;
+        });
+        synchronized (this) {
+            pendingCheckpoint = checkpoint;
+        }
+        return checkpoint;
+    }
+
+    public synchronized void awaitCheckpoint() throws IOException {
+        if (pendingCheckpoint == null) {
+            return;
+        }
+        try {
+            pendingCheckpoint.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for checkpoint");
+        } catch (ExecutionException e) {
+            throw new IOException("Checkpoint of " + filePath + " failed", e.getCause());
+        } finally {
+            pendingCheckpoint = null;
+        }
+    }
+
+    public void closeJournal() {
+        beginWrite();
+        try {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                journal = null;
+            }
+        } finally {
+            endWrite();
         }
-        removeRecord(id);
-        order.setAddress(newAddress);
-        order.setDate(newDate);
-        order.setWeight(newWeight);
-        addRecord(order);
-        return true;
     }
 
     public void backupDatabase() throws IOException {
-        String backupFilePath = filePath + ".bak";
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(backupFilePath))) {
-            oos.writeObject(new ArrayList<>(ordersMap.values()));
+        long start = metrics.start();
+        try {
+            checkpoint();
+            awaitCheckpoint();
+        } finally {
+            metrics.record(DatabaseMetrics.Op.BACKUP, start);
         }
     }
 
     public void restoreDatabase() throws IOException, ClassNotFoundException {
-        String backupFilePath = filePath + ".bak";
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(backupFilePath))) {
-            List<Order> loadedOrders = (List<Order>) ois.readObject();
+        long start = metrics.start();
+        beginWrite();
+        try {
+            awaitCheckpoint();
+            if (!hasJournal()) {
+                throw new FileNotFoundException("No backup or journal to restore for " + filePath);
+            }
+            recover(new File(filePath + ".bak"));
+        } finally {
+            endWrite();
+            metrics.record(DatabaseMetrics.Op.RESTORE, start);
+        }
+    }
+
+    public boolean hasJournal() {
+        return filePath != null && (new File(filePath + ".bak").exists()
+                || new File(filePath + ".log.old").exists() || new File(filePath + ".log").exists());
+    }
+
+    void recoverJournal() throws IOException {
+        beginWrite();
+        try {
+            awaitCheckpoint();
+            File backup = new File(filePath + ".bak");
+            recover(backup.exists() ? backup : new File(filePath));
+        } finally {
+            endWrite();
+        }
+    }
+
+    private void recover(File base) throws IOException {
+        List<Order> backedUp = new ArrayList<>();
+        if (base.exists()) {
+            OrderFile.read(base, backedUp::add);
+        }
+        boolean wasReplaying = replaying;
+        replaying = true;
+        try {
             clear();
-            for (Order order : loadedOrders) {
-                addRecord(order);
+            beginBulkLoad();
+            try {
+                for (Order order : backedUp) {
+                    addRecord(order);
+                }
+            } finally {
+                endBulkLoad();
+            }
+            Journal.replay(new File(filePath + ".log.old"), this);
+            Journal.replay(new File(filePath + ".log"), this);
+        } finally {
+            replaying = wasReplaying;
+        }
+    }
+
+    public SnapshotManager getSnapshots() {
+        return snapshots;
+    }
+
+    public SnapshotManager.Snapshot takeSnapshot(String label) {
+        beginWrite();
+        try {
+            return snapshots.take(label);
+        } finally {
+            endWrite();
+        }
+    }
+
+    public void restoreDatabase(SnapshotManager.Snapshot snapshot) throws IOException {
+        long start = metrics.start();
+        beginWrite();
+        try {
+            rollBack(snapshots.since(snapshot.getVersion()), "Before restoring " + snapshot);
+        } finally {
+            endWrite();
+            metrics.record(DatabaseMetrics.Op.RESTORE, start);
+        }
+    }
+
+    public void restoreDatabase(Instant time) throws IOException {
+        long start = metrics.start();
+        beginWrite();
+        try {
+            rollBack(snapshots.since(snapshots.versionAt(time)), "Before restoring " + time);
+        } finally {
+            endWrite();
+            metrics.record(DatabaseMetrics.Op.RESTORE, start);
+        }
+    }
+
+    private void rollBack(List<SnapshotManager.Change> undo, String label) {
+        if (undo.isEmpty()) {
+            return;
+        }
+        snapshots.take(label);
+        for (SnapshotManager.Change change : undo) {
+            if (change.getBefore() == null) {
+                removeRecord(change.getId());
+            } else {
+                applyPut(change.getBefore());
             }
         }
     }
 
     public void exportToXlsx(String filePath) throws IOException {
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Orders");
-        Row headerRow = sheet.createRow(0);
-        headerRow.createCell(0).setCellValue("ID");
-        headerRow.createCell(1).setCellValue("Address");
-        headerRow.createCell(2).setCellValue("Date");
-        headerRow.createCell(3).setCellValue("Weight");
-        int rowNum = 1;
-        for (Order order : ordersMap.values()) {
+        long start = metrics.start();
+        Order[] rows = readLocked(() -> {
+            Order[] snapshot = new Order[orderedIds.size()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = store.get(orderedIds.get(i));
+            }
+            return snapshot;
+        });
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            writeExportRows(workbook, rows);
+            try (OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(filePath))) {
+                workbook.write(fileOut);
+            }
+        } finally {
+            workbook.dispose();
+            workbook.close();
+            metrics.record(DatabaseMetrics.Op.EXPORT, start);
+        }
+    }
+
+    private static void writeExportRows(Workbook workbook, Order[] rows) {
+        CellStyle dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(workbook.createDataFormat().getFormat("dd.mm.yyyy"));
+        Sheet sheet = null;
+        int rowNum = 0;
+        for (Order order : rows) {
+            if (sheet == null || rowNum > MAX_ROWS_PER_SHEET) {
+                int sheetNumber = workbook.getNumberOfSheets() + 1;
+                sheet = createExportSheet(workbook, sheetNumber == 1 ? "Orders" : "Orders " + sheetNumber);
+                rowNum = 1;
+            }
             Row row = sheet.createRow(rowNum++);
             row.createCell(0).setCellValue(order.getId());
             row.createCell(1).setCellValue(order.getAddress());
-            row.createCell(2).setCellValue(order.getDate().format(DateTimeFormatter.ofPattern("dd.MM.yyyy")));
+            Cell dateCell = row.createCell(2);
+            if (order.getDate().isBefore(EXCEL_FIRST_SERIAL_DATE)) {
+                dateCell.setCellValue(order.getDate().format(DATE_FORMAT));
+            } else {
+                dateCell.setCellValue(order.getDate().toEpochDay() + EXCEL_EPOCH_OFFSET);
+                dateCell.setCellStyle(dateStyle);
+            }
             row.createCell(3).setCellValue(order.getWeight());
         }
-        try (FileOutputStream fileOut = new FileOutputStream(filePath)) {
-            workbook.write(fileOut);
-        } finally {
-            workbook.close();
+        if (sheet == null) {
+            createExportSheet(workbook, "Orders");
         }
     }
 
+    private static Sheet createExportSheet(Workbook workbook, String name) {
+        Sheet sheet = workbook.createSheet(name);
+        Row headerRow = sheet.createRow(0);
+        headerRow.createCell(0).setCellValue("ID");
+        headerRow.createCell(1).setCellValue("Address");
+        headerRow.createCell(2).setCellValue("Date");
+        headerRow.createCell(3).setCellValue("Weight");
+        return sheet;
+    }
+
     public void clear() {
-        ordersMap.clear();
-        addressIndex.clear();
-        dateIndex.clear();
-        weightIndex.clear();
+        beginWrite();
+        try {
+            log(Journal.CLEAR, null);
+            if (snapshots.isRecording()) {
+                for (Order order : store.snapshot()) {
+                    snapshots.record(order.getId(), order);
+                }
+            }
+            store.clear();
+            orderedIds.clear();
+            addressIndex.clear();
+            addressText.clear();
+            dateIndex.clear();
+            weightIndex.clear();
+            dateStats.clear();
+            weightStats.clear();
+            clearTotals();
+            DatabaseChange change = pendingChange();
+            if (change != null) {
+                change.reset();
+            }
+            checkpointIfDue();
+        } finally {
+            endWrite();
+        }
     }
 
     public void saveDatabase() throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            oos.writeObject(new ArrayList<>(ordersMap.values()));
+        long start = metrics.start();
+        try {
+            OrderFile.writeAtomically(getRecords(), new File(filePath), fileFormat);
+        } finally {
+            metrics.record(DatabaseMetrics.Op.SAVE, start);
         }
     }
 
     public void loadDatabase() throws IOException, ClassNotFoundException {
-        clear();
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filePath))) {
-            List<Order> loadedOrders = (List<Order>) ois.readObject();
-            for (Order order : loadedOrders) {
-                addRecord(order);
+        long start = metrics.start();
+        beginWrite();
+        try {
+            awaitCheckpoint();
+            if (journalEnabled && journal == null && hasJournal()) {
+                recoverJournal();
+            } else {
+                boolean wasReplaying = replaying;
+                replaying = true;
+                try {
+                    clear();
+                    beginBulkLoad();
+                    OrderFile.read(new File(filePath), this::addRecord);
+                } finally {
+                    endBulkLoad();
+                    replaying = wasReplaying;
+                }
             }
+            if (journalEnabled) {
+                checkpoint();
+            }
+        } finally {
+            endWrite();
+            metrics.record(DatabaseMetrics.Op.LOAD, start);
+        }
+    }
+
+    void loadRecords(Collection<Order> orders) throws IOException {
+        long start = metrics.start();
+        beginWrite();
+        try {
+            boolean wasReplaying = replaying;
+            replaying = true;
+            try {
+                clear();
+                beginBulkLoad();
+                addRecords(orders);
+            } finally {
+                endBulkLoad();
+                replaying = wasReplaying;
+            }
+            if (journalEnabled) {
+                checkpoint();
+            }
+        } finally {
+            endWrite();
+            metrics.record(DatabaseMetrics.Op.LOAD, start);
         }
     }
 
     public List<Order> getRecords() {
-        return new ArrayList<>(ordersMap.values());
+        return readLocked(() -> store.snapshot());
+    }
+
+    public List<Order> page(PageRequest request) {
+        return findLocked(() -> {
+            List<Order> page = new ArrayList<>(Math.min(request.getLimit(), store.size()));
+            switch (request.getSort()) {
+                case ID:
+                    idPage(request.isDescending(), request.hasAfter(), request.getAfter(), request.getOffset(), request.getLimit(), page);
+                    break;
+                case DATE:
+                    bucketPage(dateIndex, Order::getDate, request, page);
+                    break;
+                case WEIGHT:
+                    bucketPage(weightIndex, Order::getWeight, request, page);
+                    break;
+            }
+            return page.isEmpty() ? Collections.<Order>emptyList() : Collections.unmodifiableList(page);
+        });
+    }
+
+    public Stream<Order> stream() {
+        return stream(PageRequest.Sort.ID, false);
+    }
+
+    public Stream<Order> stream(PageRequest.Sort sort, boolean descending) {
+        Iterator<Order> pages = new Iterator<Order>() {
+            private List<Order> page = Collections.emptyList();
+            private int next;
+            private Order last;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (next < page.size()) {
+                    return true;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                page = readLocked(() -> nextPage(sort, descending, last));
+                next = 0;
+                exhausted = page.size() < STREAM_PAGE;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public Order next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = page.get(next++);
+                return last;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private List<Order> nextPage(PageRequest.Sort sort, boolean descending, Order last) {
+        List<Order> page = new ArrayList<>(STREAM_PAGE);
+        switch (sort) {
+            case ID:
+                idPage(descending, last != null, last == null ? 0 : last.getId(), 0, STREAM_PAGE, page);
+                break;
+            case DATE:
+                bucketPage(dateIndex, descending, last == null ? null : last.getDate(), last == null ? 0 : last.getId(), 0, STREAM_PAGE, page);
+                break;
+            case WEIGHT:
+                bucketPage(weightIndex, descending, last == null ? null : last.getWeight(), last == null ? 0 : last.getId(), 0, STREAM_PAGE, page);
+                break;
+        }
+        return page;
+    }
+
+    private void idPage(boolean descending, boolean hasAfter, int after, long offset, int limit, List<Order> page) {
+        int size = orderedIds.size();
+        long start = 0;
+        if (hasAfter) {
+            int position = orderedIds.indexOf(after);
+            start = descending
+                    ? size - (position >= 0 ? position : -position - 1)
+                    : (position >= 0 ? position + 1 : -position - 1);
+        }
+        for (long k = start + offset; k < size && page.size() < limit; k++) {
+            page.add(store.get(orderedIds.get(descending ? size - 1 - (int) k : (int) k)));
+        }
+    }
+
+    private <K> void bucketPage(TreeMap<K, IntHashSet> index, Function<Order, K> key, PageRequest request, List<Order> page) {
+        K anchor = null;
+        if (request.hasAfter()) {
+            Order order = store.get(request.getAfter());
+            if (order == null) {
+                throw new IllegalArgumentException("Order " + request.getAfter() + " no longer exists; page from the start.");
+            }
+            anchor = key.apply(order);
+        }
+        bucketPage(index, request.isDescending(), anchor, request.getAfter(), request.getOffset(), request.getLimit(), page);
+    }
+
+    private <K> void bucketPage(NavigableMap<K, IntHashSet> index, boolean descending, K anchor, int after,
+                                long offset, int limit, List<Order> page) {
+        NavigableMap<K, IntHashSet> view = descending ? index.descendingMap() : index;
+        if (anchor != null) {
+            view = view.tailMap(anchor, true);
+        }
+        long skip = offset;
+        for (Map.Entry<K, IntHashSet> entry : view.entrySet()) {
+            if (page.size() >= limit) {
+                return;
+            }
+            IntHashSet bucket = entry.getValue();
+            boolean anchored = anchor != null && entry.getKey().equals(anchor);
+            if (!anchored && skip >= bucket.size()) {
+                skip -= bucket.size();
+                continue;
+            }
+            int[] ids = bucket.toSortedArray();
+            for (int i = 0; i < ids.length && page.size() < limit; i++) {
+                int id = descending ? ids[ids.length - 1 - i] : ids[i];
+                if (anchored && (descending ? id >= after : id <= after)) {
+                    continue;
+                }
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                page.add(store.get(id));
+            }
+        }
+    }
+
+    public int[] getIds() {
+        return readLocked(() -> store.ids());
+    }
+
+    public int size() {
+        return read(() -> store.size());
+    }
+
+    public DatabaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    private DatabaseMetrics.Gauges gauges() {
+        return readLocked(() -> new DatabaseMetrics.Gauges(store.size(), addressIndex.size(), dateIndex.size(), weightIndex.size(),
+                largestBucket(addressIndex.values()), largestBucket(dateIndex.values()), largestBucket(weightIndex.values())));
+    }
+
+    private static int largestBucket(Collection<IntHashSet> buckets) {
+        int largest = 0;
+        for (IntHashSet ids : buckets) {
+            largest = Math.max(largest, ids.size());
+        }
+        return largest;
     }
 }
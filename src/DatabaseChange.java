@@ -0,0 +1,84 @@
+import java.util.Arrays;
+
+public class DatabaseChange {
+    private final IntHashSet added = new IntHashSet();
+    private final IntHashSet updated = new IntHashSet();
+    private final IntHashSet removed = new IntHashSet();
+    private boolean reset;
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public int[] getAdded() {
+        return sorted(added);
+    }
+
+    public int[] getUpdated() {
+        return sorted(updated);
+    }
+
+    public int[] getRemoved() {
+        return sorted(removed);
+    }
+
+    public boolean isEmpty() {
+        return !reset && added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+
+    void added(int id) {
+        if (reset) {
+            return;
+        }
+        if (removed.remove(id)) {
+            updated.add(id);
+        } else {
+            added.add(id);
+        }
+    }
+
+    void updated(int id) {
+        if (!reset && !added.contains(id)) {
+            updated.add(id);
+        }
+    }
+
+    void removed(int id) {
+        if (reset || added.remove(id)) {
+            return;
+        }
+        updated.remove(id);
+        removed.add(id);
+    }
+
+    void reset() {
+        reset = true;
+        added.clear();
+        updated.clear();
+        removed.clear();
+    }
+
+    void merge(DatabaseChange later) {
+        if (later.reset) {
+            reset();
+            return;
+        }
+        later.added.forEach(this::added);
+        later.updated.forEach(this::updated);
+        later.removed.forEach(this::removed);
+    }
+
+    private static int[] sorted(IntHashSet ids) {
+        int[] result = ids.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (reset) {
+            return "reset";
+        }
+        return added.size() + " added, " + updated.size() + " updated, " + removed.size() + " removed";
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class DatabaseClient implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int PIPELINE_WINDOW = 256;
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public DatabaseClient() throws IOException {
+        this(DatabaseProtocol.DEFAULT_PORT);
+    }
+
+    public DatabaseClient(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    public DatabaseClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+        out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    public void ping() throws IOException {
+        locked(() -> call(DatabaseProtocol.PING));
+    }
+
+    public int size() throws IOException {
+        return Integer.parseInt(single(locked(() -> call(DatabaseProtocol.SIZE))));
+    }
+
+    public boolean addRecord(Order order) throws IOException {
+        String request = DatabaseProtocol.join(DatabaseProtocol.ADD, DatabaseProtocol.encode(order));
+        return Boolean.parseBoolean(single(locked(() -> call(request))));
+    }
+
+    public int addRecords(Collection<Order> orders) throws IOException {
+        return locked(() -> {
+            int added = 0;
+            Iterator<Order> pending = orders.iterator();
+            for (int remaining = orders.size(); remaining > 0; ) {
+                int batch = Math.min(remaining, DatabaseProtocol.MAX_BATCH);
+                DatabaseProtocol.writeLine(out, DatabaseProtocol.join(DatabaseProtocol.ADD_ALL, Integer.toString(batch)));
+                for (int i = 0; i < batch; i++) {
+                    DatabaseProtocol.writeLine(out, DatabaseProtocol.encode(pending.next()));
+                }
+                out.flush();
+                added += Integer.parseInt(single(response()));
+                remaining -= batch;
+            }
+            return added;
+        });
+    }
+
+    public boolean editRecord(int id, String newAddress, LocalDate newDate, double newWeight) throws IOException {
+        String request = DatabaseProtocol.join(DatabaseProtocol.EDIT, DatabaseProtocol.encode(new Order(id, newAddress, newDate, newWeight)));
+        return Boolean.parseBoolean(single(locked(() -> call(request))));
+    }
+
+    public void removeRecord(int id) throws IOException {
+        locked(() -> call(DatabaseProtocol.join(DatabaseProtocol.REMOVE, Integer.toString(id))));
+    }
+
+    public Order findById(int id) throws IOException {
+        List<String> response = locked(() -> call(DatabaseProtocol.join(DatabaseProtocol.FIND, Integer.toString(id))));
+        return response.isEmpty() ? null : DatabaseProtocol.decode(DatabaseProtocol.fields(response.get(0)), 0);
+    }
+
+    public List<Order> findByIds(int[] ids) throws IOException {
+        return locked(() -> {
+            List<Order> orders = new ArrayList<>(ids.length);
+            IOException failure = null;
+            for (int from = 0; from < ids.length; from += PIPELINE_WINDOW) {
+                int to = Math.min(ids.length, from + PIPELINE_WINDOW);
+                for (int i = from; i < to; i++) {
+                    DatabaseProtocol.writeLine(out, DatabaseProtocol.join(DatabaseProtocol.FIND, Integer.toString(ids[i])));
+                }
+                out.flush();
+                for (int i = from; i < to; i++) {
+                    try {
+                        orders.addAll(decode(response()));
+                    } catch (IOException e) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return orders;
+        });
+    }
+
+    public List<Order> findByAddress(String address) throws IOException {
+        String request = DatabaseProtocol.join(DatabaseProtocol.FIND_ADDRESS, DatabaseProtocol.escape(address));
+        return decode(locked(() -> call(request)));
+    }
+
+    public List<Order> findByDate(LocalDate date) throws IOException {
+        String request = DatabaseProtocol.join(DatabaseProtocol.FIND_DATE, date.toString());
+        return decode(locked(() -> call(request)));
+    }
+
+    public List<Order> findByWeight(double weight) throws IOException {
+        String request = DatabaseProtocol.join(DatabaseProtocol.FIND_WEIGHT, Double.toString(weight));
+        return decode(locked(() -> call(request)));
+    }
+
+    public List<Order> findByDateRange(LocalDate from, LocalDate to) throws IOException {
+        String request = DatabaseProtocol.join(DatabaseProtocol.FIND_DATES, from.toString(), to.toString());
+        return decode(locked(() -> call(request)));
+    }
+
+    public List<Order> findByWeightRange(double min, double max) throws IOException {
+        String request = DatabaseProtocol.join(DatabaseProtocol.FIND_WEIGHTS, Double.toString(min), Double.toString(max));
+        return decode(locked(() -> call(request)));
+    }
+
+    public List<Order> query(String query) throws IOException {
+        String request = DatabaseProtocol.join(DatabaseProtocol.QUERY, DatabaseProtocol.escape(query));
+        return decode(locked(() -> call(request)));
+    }
+
+    public List<Order> page(PageRequest page) throws IOException {
+        String request = DatabaseProtocol.join(DatabaseProtocol.PAGE, DatabaseProtocol.encode(page));
+        return decode(locked(() -> call(request)));
+    }
+
+    public void saveDatabase() throws IOException {
+        locked(() -> call(DatabaseProtocol.SAVE));
+    }
+
+    public void exportToXlsx(String filePath) throws IOException {
+        String request = DatabaseProtocol.join(DatabaseProtocol.EXPORT, DatabaseProtocol.escape(filePath));
+        locked(() -> call(request));
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            DatabaseProtocol.writeLine(out, DatabaseProtocol.QUIT);
+            out.flush();
+        } catch (IOException ignored) {
+        } finally {
+            socket.close();
+            lock.unlock();
+        }
+    }
+
+    private <T> T locked(Exchange<T> exchange) throws IOException {
+        lock.lock();
+        try {
+            return exchange.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<String> call(String request) throws IOException {
+        DatabaseProtocol.writeLine(out, request);
+        out.flush();
+        return response();
+    }
+
+    private List<String> response() throws IOException {
+        String[] status = DatabaseProtocol.fields(DatabaseProtocol.readLine(in));
+        if (status[0].equals(DatabaseProtocol.ERROR)) {
+            throw new IOException("Server error: " + (status.length > 1 ? DatabaseProtocol.unescape(status[1]) : "unknown"));
+        }
+        if (!status[0].equals(DatabaseProtocol.OK) || status.length != 2) {
+            throw new IOException("Malformed response: " + String.join(" ", status));
+        }
+        int count = DatabaseProtocol.parseInt(status[1]);
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(DatabaseProtocol.readLine(in));
+        }
+        return lines;
+    }
+
+    private static String single(List<String> response) throws IOException {
+        if (response.size() != 1) {
+            throw new IOException("Expected a single value but got " + response.size());
+        }
+        return response.get(0);
+    }
+
+    private static List<Order> decode(List<String> lines) throws IOException {
+        List<Order> orders = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            orders.add(DatabaseProtocol.decode(DatabaseProtocol.fields(line), 0));
+        }
+        return orders;
+    }
+
+    private interface Exchange<T> {
+        T run() throws IOException;
+    }
+}
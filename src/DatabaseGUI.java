@@ -1,23 +1,55 @@
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.management.JMException;
 
 public class DatabaseGUI extends Application {
+    private static final Duration TYPING_DELAY = Duration.millis(150);
+    private static final String LAST_BACKUP = "Last backup on disk";
+
     private Database database = new Database();
     private ListView<Order> listView = new ListView<>();
+    private PagedOrderList items;
+    private ProgressBar progressBar = new ProgressBar();
+    private Label statusLabel = new Label();
+    private Task<?> currentTask;
+    private Callable<List<Order>> viewQuery;
+    private final Object changeLock = new Object();
+    private DatabaseChange pendingChange;
+    private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "database-gui-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
     private TextField idField, addressField, dateField, weightField;
     private ComboBox<String> searchField;
     private TextField searchValueField;
+    private final PauseTransition searchDelay = new PauseTransition(TYPING_DELAY);
     private ComboBox<String> removeField;
     private TextField removeValueField;
 
@@ -28,6 +60,26 @@ public class DatabaseGUI extends Application {
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("File Database");
+        if (getParameters().getRaw().contains("--columnar")) {
+            database = new Database(new ColumnarOrderStore());
+        }
+        if (getParameters().getRaw().contains("--compressed")) {
+            database.setFileFormat(OrderFile.Format.COMPRESSED);
+        }
+        if (getParameters().getRaw().contains("--metrics")) {
+            DatabaseMetrics metrics = database.getMetrics();
+            metrics.setEnabled(true);
+            try {
+                metrics.register("DatabaseGUI");
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            metrics.startDump(new File("database-metrics.txt"), 1, TimeUnit.MINUTES);
+        }
+        items = new PagedOrderList(database);
+        listView.setItems(items);
+        database.addListener(this::databaseChanged);
+        progressBar.setVisible(false);
 
         idField = new TextField();
         idField.setPromptText("ID (key)");
@@ -39,11 +91,21 @@ public class DatabaseGUI extends Application {
         weightField.setPromptText("Weight");
 
         searchField = new ComboBox<>();
-        searchField.getItems().addAll("ID", "Address", "Date", "Weight");
+        searchField.getItems().addAll("ID", "Address", "Date", "Weight", "Query");
         searchField.setPromptText("Select field to search");
 
         searchValueField = new TextField();
-        searchValueField.setPromptText("Enter value to search");
+        searchValueField.setPromptText("Enter value to search (date and weight accept ranges: from-to; query: address=X; date>=01.07.2024; weight>5 | ...)");
+        searchDelay.setOnFinished(e -> {
+            if ("Address".equals(searchField.getValue()) && !searchValueField.getText().isBlank()) {
+                searchAddress(searchValueField.getText());
+            }
+        });
+        searchValueField.textProperty().addListener((observable, oldText, newText) -> {
+            if ("Address".equals(searchField.getValue())) {
+                searchDelay.playFromStart();
+            }
+        });
 
         removeField = new ComboBox<>();
         removeField.getItems().addAll("ID", "Address", "Date", "Weight");
@@ -70,8 +132,14 @@ public class DatabaseGUI extends Application {
         Button exportButton = new Button("Export to .xlsx");
         exportButton.setOnAction(e -> exportToXlsx(primaryStage));
 
+        Button importButton = new Button("Import .csv/.xlsx");
+        importButton.setOnAction(e -> importRecords(primaryStage));
+
+        Button summaryButton = new Button("Summary");
+        summaryButton.setOnAction(e -> showSummary(primaryStage));
+
         HBox buttonLayout = new HBox(10);
-        buttonLayout.getChildren().addAll(saveButton, loadButton, clearButton, exportButton, restoreButton);
+        buttonLayout.getChildren().addAll(saveButton, loadButton, clearButton, exportButton, importButton, restoreButton, summaryButton);
 
         Button addButton = new Button("Add Order");
         addButton.setOnAction(e -> addRecord());
@@ -97,23 +165,40 @@ public class DatabaseGUI extends Application {
         HBox recordButtonLayout3 = new HBox(10);
         recordButtonLayout3.getChildren().addAll(removeField, removeButton);
 
+        HBox statusLayout = new HBox(10);
+        statusLayout.getChildren().addAll(progressBar, statusLabel);
+
         VBox layout = new VBox(10);
         layout.getChildren().addAll(buttonLayout, idField, addressField, dateField, weightField, recordButtonLayout,
                 listView,
                 recordButtonLayout2, searchValueField,
-                recordButtonLayout3, removeValueField);
+                recordButtonLayout3, removeValueField,
+                statusLayout);
 
         Scene scene = new Scene(layout, 800, 600);
         primaryStage.setScene(scene);
         primaryStage.show();
     }
 
-    private void addRecord() {
+    @Override
+    public void stop() {
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         try {
-            database.backupDatabase();
+            database.awaitCheckpoint();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        database.closeJournal();
+        database.getMetrics().stopDump();
+        database.getMetrics().unregister();
+    }
+
+    private void addRecord() {
         int id;
         try {
             id = Integer.parseInt(idField.getText());
@@ -141,12 +226,13 @@ public class DatabaseGUI extends Application {
         if (weight <= 0){showAlert("Error", "Weight must be positive."); return;}
 
         Order order = new Order(id, address, date, weight);
-        if (database.addRecord(order)) {
-            listView.getItems().add(order);
-            clearFields();
-        } else {
-            showAlert("Error", "Record with this ID already exists.");
-        }
+        runInBackground("Adding order " + id + "...", () -> database.addRecord(order), added -> {
+            if (added) {
+                clearFields();
+            } else {
+                showAlert("Error", "Record with this ID already exists.");
+            }
+        }, "Failed to add order.");
     }
 
     private void editSelectedRecord() {
@@ -162,11 +248,6 @@ public class DatabaseGUI extends Application {
     }
 
     private void saveChanges() {
-        try {
-            database.backupDatabase();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
         int id;
         try {
             id = Integer.parseInt(idField.getText());
@@ -193,21 +274,19 @@ public class DatabaseGUI extends Application {
         if (weight <= 0){showAlert("Error", "Weight must be positive."); return;}
 
 
-        if (database.editRecord(id, address, date, weight)) {
-            int index = listView.getSelectionModel().getSelectedIndex();
-            listView.getItems().set(index, new Order(id, address, date, weight));
-            clearFields();
-        } else {
-            showAlert("Error", "Order with this ID does not exist.");
-        }
+        runInBackground("Saving order " + id + "...", () -> {
+            database.takeSnapshot("Before editing order " + id);
+            return database.editRecord(id, address, date, weight);
+        }, edited -> {
+            if (edited) {
+                clearFields();
+            } else {
+                showAlert("Error", "Order with this ID does not exist.");
+            }
+        }, "Failed to save order.");
     }
 
     private void removeRecord() {
-        try {
-            database.backupDatabase();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
         String selectedField = removeField.getValue();
         String removeValue = removeValueField.getText();
 
@@ -216,21 +295,30 @@ public class DatabaseGUI extends Application {
                 case "ID":
                     try {
                         int id = Integer.parseInt(removeValue);
-                        database.removeRecord(id);
-                        listView.getItems().removeIf(order -> order.getId() == id);
+                        runInBackground("Removing order " + id + "...", () -> {
+                            database.takeSnapshot("Before removing order " + id);
+                            database.removeRecord(id);
+                            return null;
+                        }, removed -> {}, "Failed to remove order.");
                     } catch (NumberFormatException e) {
                         showAlert("Error", "ID must be an integer.");
                     }
                     break;
                 case "Address":
-                    database.removeRecordsByAddress(removeValue);
-                    listView.getItems().removeIf(order -> order.getAddress().equals(removeValue));
+                    runInBackground("Removing orders...", () -> {
+                        database.takeSnapshot("Before removing orders at " + removeValue);
+                        database.removeRecordsByAddress(removeValue);
+                        return null;
+                    }, removed -> {}, "Failed to remove orders.");
                     break;
                 case "Date":
                     try {
                         LocalDate date = LocalDate.parse(removeValue, DateTimeFormatter.ofPattern("dd.MM.yyyy"));
-                        database.removeRecordsByDate(date.format(DateTimeFormatter.ofPattern("dd.MM.yyyy")));
-                        listView.getItems().removeIf(order -> order.getDate().equals(date));
+                        runInBackground("Removing orders...", () -> {
+                            database.takeSnapshot("Before removing orders on " + removeValue);
+                            database.removeRecordsByDate(date.format(DateTimeFormatter.ofPattern("dd.MM.yyyy")));
+                            return null;
+                        }, removed -> {}, "Failed to remove orders.");
                     } catch (DateTimeParseException e) {
                         showAlert("Error", "Date must be in format dd.MM.yyyy.");
                     }
@@ -238,8 +326,11 @@ public class DatabaseGUI extends Application {
                 case "Weight":
                     try {
                         double weight = Double.parseDouble(removeValue);
-                        database.removeRecordsByWeight(weight);
-                        listView.getItems().removeIf(order -> order.getWeight() == weight);
+                        runInBackground("Removing orders...", () -> {
+                            database.takeSnapshot("Before removing orders weighing " + weight);
+                            database.removeRecordsByWeight(weight);
+                            return null;
+                        }, removed -> {}, "Failed to remove orders.");
                     } catch (NumberFormatException e) {
                         showAlert("Error", "Weight must be a number.");
                     }
@@ -255,40 +346,64 @@ public class DatabaseGUI extends Application {
     private void searchRecord() {
         String selectedField = searchField.getValue();
         String searchValue = searchValueField.getText();
-        listView.getItems().clear();
 
         if (selectedField != null && !searchValue.isEmpty()) {
             switch (selectedField) {
                 case "ID":
                     try {
                         int id = Integer.parseInt(searchValue);
-                        Order order = database.findById(id);
-                        if (order != null) {
-                            listView.getItems().add(order);
-                        } else {
-                            showAlert("Error", "Order not found.");
-                        }
+                        search(() -> {
+                            Order order = database.findById(id);
+                            return order == null ? List.of() : List.of(order);
+                        }, order -> order.getId() == id, orders -> {
+                            if (orders.isEmpty()) {
+                                showAlert("Error", "Order not found.");
+                            }
+                        });
                     } catch (NumberFormatException e) {
                         showAlert("Error", "ID must be an integer.");
                     }
                     break;
                 case "Address":
-                    listView.getItems().addAll(database.findByAddress(searchValue));
+                    searchDelay.stop();
+                    searchAddress(searchValue);
                     break;
                 case "Date":
                     try {
-                        LocalDate date = LocalDate.parse(searchValue, DateTimeFormatter.ofPattern("dd.MM.yyyy"));
-                        listView.getItems().addAll(database.findByDate(date.format(DateTimeFormatter.ofPattern("dd.MM.yyyy"))));
+                        String[] range = searchValue.split("-", 2);
+                        LocalDate from = LocalDate.parse(range[0].trim(), DateTimeFormatter.ofPattern("dd.MM.yyyy"));
+                        if (range.length == 2) {
+                            LocalDate to = LocalDate.parse(range[1].trim(), DateTimeFormatter.ofPattern("dd.MM.yyyy"));
+                            search(() -> database.findByDateRange(from, to),
+                                    order -> !order.getDate().isBefore(from) && !order.getDate().isAfter(to), orders -> {});
+                        } else {
+                            search(() -> database.findByDate(from), order -> order.getDate().equals(from), orders -> {});
+                        }
                     } catch (DateTimeParseException e) {
-                        showAlert("Error", "Date must be in format dd.MM.yyyy.");
+                        showAlert("Error", "Date must be in format dd.MM.yyyy or dd.MM.yyyy-dd.MM.yyyy.");
                     }
                     break;
                 case "Weight":
                     try {
-                        double weight = Double.parseDouble(searchValue);
-                        listView.getItems().addAll(database.findByWeight(weight));
+                        String[] range = searchValue.split("-", 2);
+                        double weight = Double.parseDouble(range[0].trim());
+                        if (range.length == 2) {
+                            double to = Double.parseDouble(range[1].trim());
+                            search(() -> database.findByWeightRange(weight, to),
+                                    order -> order.getWeight() >= weight && order.getWeight() <= to, orders -> {});
+                        } else {
+                            search(() -> database.findByWeight(weight), order -> order.getWeight() == weight, orders -> {});
+                        }
                     } catch (NumberFormatException e) {
-                        showAlert("Error", "Weight must be a number.");
+                        showAlert("Error", "Weight must be a number or a range like 10-20.");
+                    }
+                    break;
+                case "Query":
+                    try {
+                        Query query = Query.parse(searchValue);
+                        search(() -> database.query(query).collect(Collectors.toList()), query::test, orders -> {});
+                    } catch (IllegalArgumentException e) {
+                        showAlert("Error", e.getMessage());
                     }
                     break;
                 default:
@@ -299,9 +414,37 @@ public class DatabaseGUI extends Application {
         }
     }
 
+    private void searchAddress(String text) {
+        String key = AddressTextIndex.normalize(text);
+        int edits = key.length() >= 10 ? 2 : key.length() >= 6 ? 1 : 0;
+        Callable<List<Order>> query = edits == 0
+                ? () -> database.findByAddressContaining(key)
+                : () -> database.findByAddressFuzzy(key, edits);
+        search(query, order -> order.getAddress() != null
+                && AddressTextIndex.substringDistance(key, AddressTextIndex.normalize(order.getAddress())) <= edits, orders -> {});
+    }
+
+    private void search(Callable<List<Order>> query, Predicate<Order> filter, Consumer<List<Order>> onResult) {
+        runInBackground("Searching...", query, orders -> {
+            long start = database.getMetrics().start();
+            viewQuery = query;
+            items.setOrders(orders, filter);
+            database.getMetrics().record(DatabaseMetrics.Op.REFRESH, start);
+            statusLabel.setText(orders.size() + " orders found.");
+            onResult.accept(orders);
+        }, "Search failed.");
+    }
+
     private void showAllRecords() {
-        listView.getItems().clear();
-        listView.getItems().addAll(database.getRecords());
+        runInBackground("Loading orders...", database::getIds, this::showIds, "Failed to list orders.");
+    }
+
+    private void showIds(int[] ids) {
+        long start = database.getMetrics().start();
+        viewQuery = null;
+        items.setIds(ids);
+        database.getMetrics().record(DatabaseMetrics.Op.REFRESH, start);
+        statusLabel.setText(ids.length + " orders.");
     }
 
     private void saveDatabase(Stage primaryStage) {
@@ -309,44 +452,54 @@ public class DatabaseGUI extends Application {
         fileChooser.setTitle("Save Database");
         File file = fileChooser.showSaveDialog(primaryStage);
         if (file != null) {
-            database.setFilePath(file.getAbsolutePath());
-            try {
+            runInBackground("Saving " + file.getName() + "...", () -> {
+                database.setFilePath(file.getAbsolutePath());
                 database.saveDatabase();
-            } catch (IOException e) {
-                showAlert("Error", "Failed to save database.");
-            }
+                database.setJournalEnabled(true);
+                return null;
+            }, saved -> statusLabel.setText("Saved " + file.getName() + "."), "Failed to save database.");
         }
     }
 
     private void loadDatabase(Stage primaryStage) {
-        try {
-            database.backupDatabase();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Load Database");
         File file = fileChooser.showOpenDialog(primaryStage);
         if (file != null) {
-            database.setFilePath(file.getAbsolutePath());
-            try {
+            viewQuery = null;
+            runInBackground("Loading " + file.getName() + "...", () -> {
+                database.takeSnapshot("Before loading " + file.getName());
+                database.setFilePath(file.getAbsolutePath());
+                database.setJournalEnabled(true);
                 database.loadDatabase();
-                listView.getItems().clear();
-                listView.getItems().addAll(database.getRecords());
-            } catch (IOException | ClassNotFoundException e) {
-                showAlert("Error", "Failed to load database.");
-            }
+                return null;
+            }, loaded -> {}, "Failed to load database.");
         }
     }
 
     private void restoreDatabase() {
-        try {
-            database.restoreDatabase();
-            listView.getItems().clear();
-            listView.getItems().addAll(database.getRecords());
-        } catch (IOException | ClassNotFoundException e) {
-            showAlert("Error", "Failed to restore database.");
+        List<SnapshotManager.Snapshot> snapshots = database.getSnapshots().list();
+        List<String> choices = new ArrayList<>(snapshots.size() + 1);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            choices.add(snapshots.get(i).toString());
         }
+        choices.add(LAST_BACKUP);
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(choices.get(0), choices);
+        dialog.setTitle("Restore");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Restore to:");
+        dialog.showAndWait().ifPresent(choice -> {
+            int index = choices.indexOf(choice);
+            viewQuery = null;
+            runInBackground("Restoring...", () -> {
+                if (index < snapshots.size()) {
+                    database.restoreDatabase(snapshots.get(snapshots.size() - 1 - index));
+                } else {
+                    database.restoreDatabase();
+                }
+                return null;
+            }, restored -> {}, "Failed to restore database.");
+        });
     }
 
     private void exportToXlsx(Stage primaryStage) {
@@ -355,24 +508,161 @@ public class DatabaseGUI extends Application {
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Excel Files", "*.xlsx"));
         File file = fileChooser.showSaveDialog(primaryStage);
         if (file != null) {
-            try {
+            runInBackground("Exporting to " + file.getName() + "...", () -> {
                 database.exportToXlsx(file.getAbsolutePath());
-                showAlert("Success", "Database exported successfully to " + file.getAbsolutePath());
-            } catch (IOException e) {
-                showAlert("Error", "Failed to export database.");
-                e.printStackTrace();
-            }
+                return null;
+            }, exported -> showAlert("Success", "Database exported successfully to " + file.getAbsolutePath()),
+                    "Failed to export database.");
         }
     }
 
+    private void importRecords(Stage primaryStage) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Import Orders");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Orders", "*.csv", "*.xlsx"));
+        File file = fileChooser.showOpenDialog(primaryStage);
+        if (file != null) {
+            runInBackground("Importing " + file.getName() + "...", () -> {
+                long start = database.getMetrics().start();
+                database.takeSnapshot("Before importing " + file.getName());
+                try {
+                    return new OrderImporter(database).importFile(file);
+                } finally {
+                    database.getMetrics().record(DatabaseMetrics.Op.IMPORT, start);
+                }
+            }, result -> showAlert("Import", result.toString()), "Failed to import " + file.getName() + ".");
+        }
+    }
+
+    private void showSummary(Stage primaryStage) {
+        ComboBox<String> grouping = new ComboBox<>();
+        grouping.getItems().addAll("Day", "Month", "Address");
+        grouping.setValue("Month");
+        Label totalsLabel = new Label();
+        ListView<String> summaryView = new ListView<>();
+        grouping.setOnAction(e -> loadSummary(grouping.getValue(), totalsLabel, summaryView));
+
+        VBox layout = new VBox(10);
+        layout.getChildren().addAll(grouping, totalsLabel, summaryView);
+
+        Stage stage = new Stage();
+        stage.setTitle("Summary");
+        stage.initOwner(primaryStage);
+        stage.setScene(new Scene(layout, 600, 400));
+        stage.show();
+        loadSummary(grouping.getValue(), totalsLabel, summaryView);
+    }
+
+    private void loadSummary(String grouping, Label totalsLabel, ListView<String> summaryView) {
+        runInBackground("Loading summary...", () -> {
+            Aggregate totals = database.getTotals();
+            String header = "All orders: " + totals + (totals.getCount() == 0 ? "" : String.format(Locale.ROOT,
+                    ", median %.2f, 95th percentile %.2f", database.weightQuantile(0.5), database.weightQuantile(0.95)));
+            Map<?, Aggregate> groups;
+            switch (grouping) {
+                case "Day":
+                    groups = database.getDailyTotals();
+                    break;
+                case "Address":
+                    groups = database.getAddressTotals();
+                    break;
+                default:
+                    groups = database.getMonthlyTotals();
+            }
+            List<String> lines = new ArrayList<>(groups.size());
+            for (Map.Entry<?, Aggregate> entry : groups.entrySet()) {
+                Object key = entry.getKey();
+                String label = key instanceof LocalDate ? ((LocalDate) key).format(DateTimeFormatter.ofPattern("dd.MM.yyyy")) : String.valueOf(key);
+                lines.add(label + ": " + entry.getValue());
+            }
+            return Map.entry(header, lines);
+        }, summary -> {
+            totalsLabel.setText(summary.getKey());
+            summaryView.getItems().setAll(summary.getValue());
+        }, "Failed to load summary.");
+    }
+
     private void clearDatabase() {
-        try {
-            database.backupDatabase();
-        } catch (IOException e) {
-            e.printStackTrace();
+        runInBackground("Clearing...", () -> {
+            database.takeSnapshot("Before clearing");
+            database.clear();
+            return null;
+        }, cleared -> {}, "Failed to clear database.");
+    }
+
+    private void databaseChanged(DatabaseChange change) {
+        boolean schedule;
+        synchronized (changeLock) {
+            schedule = pendingChange == null;
+            if (schedule) {
+                pendingChange = new DatabaseChange();
+            }
+            pendingChange.merge(change);
+        }
+        if (schedule) {
+            Platform.runLater(this::applyChanges);
+        }
+    }
+
+    private void applyChanges() {
+        DatabaseChange change;
+        synchronized (changeLock) {
+            change = pendingChange;
+            pendingChange = null;
+        }
+        long start = database.getMetrics().start();
+        if (!change.isReset()) {
+            items.apply(change);
+        } else if (viewQuery == null) {
+            runInBackground("Refreshing...", database::getIds, ids -> {
+                if (viewQuery == null) {
+                    items.setIds(ids);
+                }
+            }, "Failed to refresh orders.");
+        } else {
+            Callable<List<Order>> query = viewQuery;
+            runInBackground("Refreshing...", query, orders -> {
+                if (viewQuery == query) {
+                    items.setOrders(orders, items.getFilter());
+                }
+            }, "Failed to refresh orders.");
+        }
+        database.getMetrics().record(DatabaseMetrics.Op.REFRESH, start);
+    }
+
+    private <T> void runInBackground(String message, Callable<T> work, Consumer<T> onSuccess, String failure) {
+        Task<T> task = new Task<T>() {
+            @Override
+            protected T call() throws Exception {
+                updateMessage(message);
+                return work.call();
+            }
+        };
+        task.setOnSucceeded(e -> {
+            finishTask(task);
+            onSuccess.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            finishTask(task);
+            showAlert("Error", failure);
+            task.getException().printStackTrace();
+        });
+        currentTask = task;
+        progressBar.progressProperty().bind(task.progressProperty());
+        statusLabel.textProperty().bind(task.messageProperty());
+        progressBar.setVisible(true);
+        background.execute(task);
+    }
+
+    private void finishTask(Task<?> task) {
+        if (currentTask != task) {
+            return;
         }
-        database.clear();
-        listView.getItems().clear();
+        currentTask = null;
+        progressBar.progressProperty().unbind();
+        statusLabel.textProperty().unbind();
+        progressBar.setVisible(false);
+        statusLabel.setText("");
     }
 
     private void clearFields() {
@@ -0,0 +1,3 @@
+public interface DatabaseListener {
+    void databaseChanged(DatabaseChange change);
+}
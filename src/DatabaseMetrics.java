@@ -0,0 +1,310 @@
+import java.beans.ConstructorProperties;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class DatabaseMetrics implements DatabaseMetricsMXBean {
+    public enum Op {
+        ADD, EDIT, REMOVE, FIND, SAVE, LOAD, BACKUP, RESTORE, EXPORT, IMPORT, REFRESH
+    }
+
+    private static final ScheduledExecutorService dumpExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "database-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Supplier<Gauges> gauges;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Op.values().length];
+    private volatile boolean enabled;
+    private ObjectName objectName;
+    private ScheduledFuture<?> dumpTask;
+
+    public DatabaseMetrics(Supplier<Gauges> gauges) {
+        this.gauges = gauges;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void record(Op op, long start) {
+        if (start != 0) {
+            histograms[op.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Map<String, OperationStats> getOperations() {
+        Map<String, OperationStats> operations = new LinkedHashMap<>();
+        for (Op op : Op.values()) {
+            operations.put(op.name().toLowerCase(Locale.ROOT), histograms[op.ordinal()].stats(op));
+        }
+        return operations;
+    }
+
+    @Override
+    public Gauges getGauges() {
+        return gauges.get();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append("# ").append(Instant.now()).append(System.lineSeparator());
+        out.append(getGauges()).append(System.lineSeparator());
+        for (OperationStats stats : getOperations().values()) {
+            if (stats.getCount() > 0) {
+                out.append(stats).append(System.lineSeparator());
+            }
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    public synchronized void register(String name) throws JMException {
+        unregister();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("Database:type=Metrics,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        this.objectName = objectName;
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        objectName = null;
+    }
+
+    public synchronized void startDump(File file, long period, TimeUnit unit) {
+        stopDump();
+        File tmp = new File(file.getPath() + ".tmp");
+        dumpTask = dumpExecutor.scheduleAtFixedRate(() -> {
+            try {
+                Files.write(tmp.toPath(), dump().getBytes(StandardCharsets.UTF_8));
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, period, period, unit);
+    }
+
+    public synchronized void stopDump() {
+        if (dumpTask != null) {
+            dumpTask.cancel(false);
+            dumpTask = null;
+        }
+    }
+
+    private static final class LatencyHistogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        LatencyHistogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            buckets[63 - Long.numberOfLeadingZeros(Math.max(1, nanos))].increment();
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        OperationStats stats(Op op) {
+            long[] counts = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            long max = maxNanos.get();
+            return new OperationStats(op.name().toLowerCase(Locale.ROOT), total,
+                    total == 0 ? 0 : totalNanos.sum() / total / 1000.0,
+                    percentile(counts, total, 0.5, max), percentile(counts, total, 0.99, max),
+                    percentile(counts, total, 0.999, max), max / 1000.0);
+        }
+
+        private static double percentile(long[] counts, long total, double p, long max) {
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(max, (2L << i) - 1) / 1000.0;
+                }
+            }
+            return 0;
+        }
+    }
+
+    public static final class OperationStats {
+        private final String name;
+        private final long count;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p99Micros;
+        private final double p999Micros;
+        private final double maxMicros;
+
+        @ConstructorProperties({"name", "count", "meanMicros", "p50Micros", "p99Micros", "p999Micros", "maxMicros"})
+        public OperationStats(String name, long count, double meanMicros, double p50Micros, double p99Micros,
+                              double p999Micros, double maxMicros) {
+            this.name = name;
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.p999Micros = p999Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public double getP50Micros() {
+            return p50Micros;
+        }
+
+        public double getP99Micros() {
+            return p99Micros;
+        }
+
+        public double getP999Micros() {
+            return p999Micros;
+        }
+
+        public double getMaxMicros() {
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s count=%d mean=%.1fus p50<=%.1fus p99<=%.1fus p99.9<=%.1fus max=%.1fus",
+                    name, count, meanMicros, p50Micros, p99Micros, p999Micros, maxMicros);
+        }
+    }
+
+    public static final class Gauges {
+        private final long recordCount;
+        private final int addressBuckets;
+        private final int dateBuckets;
+        private final int weightBuckets;
+        private final int largestAddressBucket;
+        private final int largestDateBucket;
+        private final int largestWeightBucket;
+
+        @ConstructorProperties({"recordCount", "addressBuckets", "dateBuckets", "weightBuckets",
+                "largestAddressBucket", "largestDateBucket", "largestWeightBucket"})
+        public Gauges(long recordCount, int addressBuckets, int dateBuckets, int weightBuckets,
+                      int largestAddressBucket, int largestDateBucket, int largestWeightBucket) {
+            this.recordCount = recordCount;
+            this.addressBuckets = addressBuckets;
+            this.dateBuckets = dateBuckets;
+            this.weightBuckets = weightBuckets;
+            this.largestAddressBucket = largestAddressBucket;
+            this.largestDateBucket = largestDateBucket;
+            this.largestWeightBucket = largestWeightBucket;
+        }
+
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        public int getAddressBuckets() {
+            return addressBuckets;
+        }
+
+        public int getDateBuckets() {
+            return dateBuckets;
+        }
+
+        public int getWeightBuckets() {
+            return weightBuckets;
+        }
+
+        public int getLargestAddressBucket() {
+            return largestAddressBucket;
+        }
+
+        public int getLargestDateBucket() {
+            return largestDateBucket;
+        }
+
+        public int getLargestWeightBucket() {
+            return largestWeightBucket;
+        }
+
+        @Override
+        public String toString() {
+            return "records=" + recordCount
+                    + " addressBuckets=" + addressBuckets + " (largest " + largestAddressBucket + ")"
+                    + " dateBuckets=" + dateBuckets + " (largest " + largestDateBucket + ")"
+                    + " weightBuckets=" + weightBuckets + " (largest " + largestWeightBucket + ")";
+        }
+    }
+}
@@ -0,0 +1,15 @@
+import java.util.Map;
+
+public interface DatabaseMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, DatabaseMetrics.OperationStats> getOperations();
+
+    DatabaseMetrics.Gauges getGauges();
+
+    String dump();
+
+    void reset();
+}
@@ -0,0 +1,186 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+final class DatabaseProtocol {
+    static final int DEFAULT_PORT = 7431;
+    static final int MAX_BATCH = 100_000;
+
+    static final String PING = "PING";
+    static final String SIZE = "SIZE";
+    static final String ADD = "ADD";
+    static final String ADD_ALL = "ADDALL";
+    static final String EDIT = "EDIT";
+    static final String REMOVE = "REMOVE";
+    static final String FIND = "FIND";
+    static final String FIND_ADDRESS = "ADDRESS";
+    static final String FIND_DATE = "DATE";
+    static final String FIND_WEIGHT = "WEIGHT";
+    static final String FIND_DATES = "DATES";
+    static final String FIND_WEIGHTS = "WEIGHTS";
+    static final String QUERY = "QUERY";
+    static final String PAGE = "PAGE";
+    static final String SAVE = "SAVE";
+    static final String EXPORT = "EXPORT";
+    static final String QUIT = "QUIT";
+
+    static final String OK = "OK";
+    static final String ERROR = "ERR";
+
+    private static final char SEPARATOR = '\t';
+    private static final String NULL = "\\N";
+
+    private DatabaseProtocol() {
+    }
+
+    static String[] fields(String line) {
+        return line.split(String.valueOf(SEPARATOR), -1);
+    }
+
+    static String join(String... fields) {
+        return String.join(String.valueOf(SEPARATOR), fields);
+    }
+
+    static String encode(Order order) {
+        return join(Integer.toString(order.getId()), escape(order.getAddress()),
+                order.getDate().toString(), Double.toString(order.getWeight()));
+    }
+
+    static Order decode(String[] fields, int from) throws IOException {
+        if (fields.length - from != 4) {
+            throw new IOException("Expected 4 order fields but got " + (fields.length - from));
+        }
+        return new Order(parseInt(fields[from]), unescape(fields[from + 1]),
+                parseDate(fields[from + 2]), parseDouble(fields[from + 3]));
+    }
+
+    static String encode(PageRequest request) {
+        String page = join(request.getSort().name(), request.isDescending() ? "desc" : "asc",
+                Integer.toString(request.getOffset()), Integer.toString(request.getLimit()));
+        return request.hasAfter() ? join(page, Integer.toString(request.getAfter())) : page;
+    }
+
+    static PageRequest decodePage(String[] fields, int from) throws IOException {
+        int count = fields.length - from;
+        if (count != 4 && count != 5) {
+            throw new IOException("Expected 4 or 5 page fields but got " + count);
+        }
+        PageRequest request;
+        try {
+            request = PageRequest.first(parseInt(fields[from + 3]))
+                    .orderBy(PageRequest.Sort.valueOf(fields[from]))
+                    .offset(parseInt(fields[from + 2]));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid page request: " + e.getMessage());
+        }
+        if (fields[from + 1].equals("desc")) {
+            request = request.descending();
+        } else if (!fields[from + 1].equals("asc")) {
+            throw new IOException("Invalid page direction: " + fields[from + 1]);
+        }
+        return count == 5 ? request.after(parseInt(fields[from + 4])) : request;
+    }
+
+    static String escape(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static String unescape(String value) throws IOException {
+        if (value.equals(NULL)) {
+            return null;
+        }
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\') {
+                unescaped.append(c);
+                continue;
+            }
+            if (++i == value.length()) {
+                throw new IOException("Dangling escape in " + value);
+            }
+            switch (value.charAt(i)) {
+                case '\\':
+                    unescaped.append('\\');
+                    break;
+                case 't':
+                    unescaped.append('\t');
+                    break;
+                case 'n':
+                    unescaped.append('\n');
+                    break;
+                case 'r':
+                    unescaped.append('\r');
+                    break;
+                default:
+                    throw new IOException("Unknown escape \\" + value.charAt(i) + " in " + value);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    static int parseInt(String value) throws IOException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid integer: " + value);
+        }
+    }
+
+    static double parseDouble(String value) throws IOException {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number: " + value);
+        }
+    }
+
+    static LocalDate parseDate(String value) throws IOException {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IOException("Invalid date: " + value);
+        }
+    }
+
+    static void writeLine(Writer out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+    }
+
+    static String readLine(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("Connection closed by peer");
+        }
+        return line;
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class DatabaseServer implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Database database;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private Thread acceptor;
+
+    public DatabaseServer(Database database, int port) throws IOException {
+        this.database = database;
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = DatabaseProtocol.DEFAULT_PORT;
+        boolean columnar = false;
+        boolean metrics = false;
+        Journal.SyncPolicy sync = Journal.SyncPolicy.OS;
+        long syncInterval = 0;
+        OrderFile.Format format = OrderFile.Format.BINARY;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--columnar":
+                    columnar = true;
+                    break;
+                case "--metrics":
+                    metrics = true;
+                    break;
+                case "--sync": {
+                    String[] policy = args[++i].split(":", 2);
+                    sync = Journal.SyncPolicy.valueOf(policy[0].toUpperCase(Locale.ROOT).replace('-', '_'));
+                    syncInterval = policy.length == 2 ? Long.parseLong(policy[1]) : 10;
+                    break;
+                }
+                case "--format":
+                    format = OrderFile.Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                default:
+                    if (file != null || args[i].startsWith("--")) {
+                        usage();
+                    }
+                    file = args[i];
+            }
+        }
+        if (file == null) {
+            usage();
+        }
+        Database database = columnar ? new Database(new ColumnarOrderStore()) : new Database();
+        database.setFilePath(new File(file).getAbsolutePath());
+        database.setJournalEnabled(true);
+        database.setSyncPolicy(sync, syncInterval);
+        database.setFileFormat(format);
+        if (new File(file).exists() || database.hasJournal()) {
+            database.loadDatabase();
+        }
+        if (metrics) {
+            database.getMetrics().setEnabled(true);
+            database.getMetrics().register("DatabaseServer");
+        }
+        DatabaseServer server = new DatabaseServer(database, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                database.awaitCheckpoint();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                database.closeJournal();
+            }
+        }, "database-server-shutdown"));
+        server.start();
+        System.out.println("Serving " + database.size() + " orders from " + file + " on " + server.getAddress());
+        server.acceptor.join();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: DatabaseServer [--port " + DatabaseProtocol.DEFAULT_PORT + "] [--columnar] [--metrics]"
+                + " [--sync every-commit|interval:<ms>|os] [--format binary|encoded|compressed] file");
+        System.exit(2);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getAddress() {
+        return serverSocket.getInetAddress().getHostAddress() + ":" + getPort();
+    }
+
+    public synchronized void start() {
+        if (acceptor != null) {
+            throw new IllegalStateException("Server already started.");
+        }
+        acceptor = Thread.ofPlatform().name("database-server").daemon().start(this::accept);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        connections.shutdown();
+        try {
+            connections.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                connections.submit(() -> serve(socket));
+            } catch (SocketException e) {
+                if (!serverSocket.isClosed()) {
+                    e.printStackTrace();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] request = DatabaseProtocol.fields(line);
+                if (request[0].equals(DatabaseProtocol.QUIT)) {
+                    break;
+                }
+                List<String> response;
+                try {
+                    response = handle(request, in);
+                } catch (ProtocolException e) {
+                    DatabaseProtocol.writeLine(out, DatabaseProtocol.join(DatabaseProtocol.ERROR, DatabaseProtocol.escape(e.getMessage())));
+                    break;
+                } catch (IOException | RuntimeException e) {
+                    String message = e.getMessage() != null ? e.getMessage() : e.toString();
+                    DatabaseProtocol.writeLine(out, DatabaseProtocol.join(DatabaseProtocol.ERROR, DatabaseProtocol.escape(message)));
+                    response = null;
+                }
+                if (response != null) {
+                    DatabaseProtocol.writeLine(out, DatabaseProtocol.join(DatabaseProtocol.OK, Integer.toString(response.size())));
+                    for (String value : response) {
+                        DatabaseProtocol.writeLine(out, value);
+                    }
+                }
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                e.printStackTrace();
+            }
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private List<String> handle(String[] request, BufferedReader in) throws IOException {
+        switch (request[0]) {
+            case DatabaseProtocol.PING:
+                return Collections.emptyList();
+            case DatabaseProtocol.SIZE:
+                return value(database.size());
+            case DatabaseProtocol.ADD:
+                return value(database.addRecord(DatabaseProtocol.decode(request, 1)));
+            case DatabaseProtocol.ADD_ALL: {
+                int count = DatabaseProtocol.parseInt(argument(request, 1));
+                if (count < 0 || count > DatabaseProtocol.MAX_BATCH) {
+                    throw new ProtocolException(DatabaseProtocol.ADD_ALL + " accepts 0 to " + DatabaseProtocol.MAX_BATCH + " orders but got " + count);
+                }
+                return value(database.addRecords(readOrders(in, count)));
+            }
+            case DatabaseProtocol.EDIT: {
+                Order order = DatabaseProtocol.decode(request, 1);
+                return value(database.editRecord(order.getId(), order.getAddress(), order.getDate(), order.getWeight()));
+            }
+            case DatabaseProtocol.REMOVE:
+                database.removeRecord(DatabaseProtocol.parseInt(argument(request, 1)));
+                return Collections.emptyList();
+            case DatabaseProtocol.FIND: {
+                Order order = database.findById(DatabaseProtocol.parseInt(argument(request, 1)));
+                return order == null ? Collections.emptyList() : Collections.singletonList(DatabaseProtocol.encode(order));
+            }
+            case DatabaseProtocol.FIND_ADDRESS:
+                return encode(database.findByAddress(DatabaseProtocol.unescape(argument(request, 1))));
+            case DatabaseProtocol.FIND_DATE:
+                return encode(database.findByDate(DatabaseProtocol.parseDate(argument(request, 1))));
+            case DatabaseProtocol.FIND_WEIGHT:
+                return encode(database.findByWeight(DatabaseProtocol.parseDouble(argument(request, 1))));
+            case DatabaseProtocol.FIND_DATES:
+                return encode(database.findByDateRange(DatabaseProtocol.parseDate(argument(request, 1)),
+                        DatabaseProtocol.parseDate(argument(request, 2))));
+            case DatabaseProtocol.FIND_WEIGHTS:
+                return encode(database.findByWeightRange(DatabaseProtocol.parseDouble(argument(request, 1)),
+                        DatabaseProtocol.parseDouble(argument(request, 2))));
+            case DatabaseProtocol.QUERY:
+                return database.query(Query.parse(DatabaseProtocol.unescape(argument(request, 1))))
+                        .map(DatabaseProtocol::encode)
+                        .collect(Collectors.toList());
+            case DatabaseProtocol.PAGE:
+                return encode(database.page(DatabaseProtocol.decodePage(request, 1)));
+            case DatabaseProtocol.SAVE:
+                database.saveDatabase();
+                return Collections.emptyList();
+            case DatabaseProtocol.EXPORT:
+                database.exportToXlsx(DatabaseProtocol.unescape(argument(request, 1)));
+                return Collections.emptyList();
+            default:
+                throw new IOException("Unknown command: " + request[0]);
+        }
+    }
+
+    private static List<Order> readOrders(BufferedReader in, int count) throws IOException {
+        List<Order> orders = new ArrayList<>(count);
+        IOException failure = null;
+        for (int i = 0; i < count; i++) {
+            String line = DatabaseProtocol.readLine(in);
+            try {
+                orders.add(DatabaseProtocol.decode(DatabaseProtocol.fields(line), 0));
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = new IOException("Order " + (i + 1) + " of " + count + ": " + e.getMessage());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return orders;
+    }
+
+    private static String argument(String[] request, int index) throws IOException {
+        if (index >= request.length) {
+            throw new IOException(request[0] + " expects " + index + " argument" + (index == 1 ? "" : "s"));
+        }
+        return request[index];
+    }
+
+    private static List<String> value(Object value) {
+        return Collections.singletonList(String.valueOf(value));
+    }
+
+    private static List<String> encode(List<Order> orders) {
+        List<String> encoded = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            encoded.add(DatabaseProtocol.encode(order));
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class HeapOrderStore implements OrderStore {
+    private final HashMap<Integer, Order> ordersMap = new HashMap<>();
+
+    @Override
+    public boolean add(Order order) {
+        return ordersMap.putIfAbsent(order.getId(), order) == null;
+    }
+
+    @Override
+    public Order get(int id) {
+        return ordersMap.get(id);
+    }
+
+    @Override
+    public Order remove(int id) {
+        return ordersMap.remove(id);
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return ordersMap.containsKey(id);
+    }
+
+    @Override
+    public void replace(Order order) {
+        ordersMap.put(order.getId(), order);
+    }
+
+    @Override
+    public int size() {
+        return ordersMap.size();
+    }
+
+    @Override
+    public void clear() {
+        ordersMap.clear();
+    }
+
+    @Override
+    public List<Order> snapshot() {
+        return new ArrayList<>(ordersMap.values());
+    }
+
+    @Override
+    public int[] ids() {
+        int[] ids = new int[ordersMap.size()];
+        int i = 0;
+        for (int id : ordersMap.keySet()) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+public final class Journal implements Closeable {
+    public enum SyncPolicy {
+        EVERY_COMMIT, INTERVAL, OS
+    }
+
+    static final byte ADD = 1;
+    static final byte EDIT = 2;
+    static final byte REMOVE = 3;
+    static final byte CLEAR = 4;
+
+    private static final int LEGACY_MAGIC = 0x4F524A4C;
+    private static final int MAGIC = 0x4F524A32;
+
+    private static final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "database-journal-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private final SyncPolicy policy;
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+    private final DataOutputStream record = new DataOutputStream(buffer);
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final ScheduledFuture<?> syncTask;
+    private volatile int entries;
+    private int synced;
+
+    public Journal(File file) throws IOException {
+        this(file, SyncPolicy.OS, 0);
+    }
+
+    public Journal(File file, SyncPolicy policy, long intervalMillis) throws IOException {
+        this.file = file;
+        this.policy = policy;
+        boolean fresh = !file.exists() || file.length() == 0;
+        if (!fresh && magic(file) != MAGIC) {
+            throw new IOException("Journal " + file + " uses an older format; restore the database to replay it first");
+        }
+        this.stream = new FileOutputStream(file, true);
+        this.channel = stream.getChannel();
+        if (fresh) {
+            record.writeInt(MAGIC);
+            commit(false);
+        }
+        if (policy == SyncPolicy.INTERVAL) {
+            long period = Math.max(1, intervalMillis);
+            syncTask = syncExecutor.scheduleWithFixedDelay(this::syncQuietly, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            syncTask = null;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int size() {
+        return entries;
+    }
+
+    public SyncPolicy getSyncPolicy() {
+        return policy;
+    }
+
+    public void sync(int sequence) throws IOException {
+        syncLock.lock();
+        try {
+            if (synced >= sequence) {
+                return;
+            }
+            int target = entries;
+            channel.force(false);
+            synced = target;
+        } catch (ClosedChannelException e) {
+            if (synced < sequence) {
+                throw e;
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    public void logAdd(Order order) throws IOException {
+        writeOrder(ADD, order);
+    }
+
+    public void logEdit(Order order) throws IOException {
+        writeOrder(EDIT, order);
+    }
+
+    public void logRemove(int id) throws IOException {
+        record.writeByte(REMOVE);
+        record.writeInt(id);
+        commit(true);
+    }
+
+    public void logClear() throws IOException {
+        record.writeByte(CLEAR);
+        commit(true);
+    }
+
+    private void writeOrder(byte op, Order order) throws IOException {
+        record.writeByte(op);
+        record.writeInt(order.getId());
+        record.writeBoolean(order.getAddress() != null);
+        if (order.getAddress() != null) {
+            byte[] address = order.getAddress().getBytes(StandardCharsets.UTF_8);
+            record.writeInt(address.length);
+            record.write(address);
+        }
+        record.writeInt((int) order.getDate().toEpochDay());
+        record.writeDouble(order.getWeight());
+        commit(true);
+    }
+
+    private void commit(boolean entry) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        buffer.reset();
+        long size = channel.size();
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(size);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        if (entry) {
+            entries++;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncTask != null) {
+            syncTask.cancel(false);
+        }
+        syncLock.lock();
+        try {
+            if (policy != SyncPolicy.OS) {
+                channel.force(false);
+                synced = entries;
+            }
+        } finally {
+            try {
+                stream.close();
+            } finally {
+                syncLock.unlock();
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync(entries);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void replay(File file, Database database) throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int magic = in.readInt();
+            if (magic != MAGIC && magic != LEGACY_MAGIC) {
+                throw new IOException("Not a journal file: " + file);
+            }
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    return;
+                }
+                try {
+                    switch (op) {
+                        case ADD:
+                        case EDIT:
+                            int id = in.readInt();
+                            String address = magic == LEGACY_MAGIC ? in.readUTF() : readAddress(in, file);
+                            LocalDate date = LocalDate.ofEpochDay(in.readInt());
+                            double weight = in.readDouble();
+                            database.applyPut(new Order(id, address, date, weight));
+                            break;
+                        case REMOVE:
+                            database.removeRecord(in.readInt());
+                            break;
+                        case CLEAR:
+                            database.clear();
+                            break;
+                        default:
+                            throw new IOException("Corrupt journal entry in " + file);
+                    }
+                } catch (EOFException e) {
+                    // torn tail of an interrupted append
+                    return;
+                }
+            }
+        }
+    }
+
+    private static String readAddress(DataInputStream in, File file) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt journal entry in " + file);
+        }
+        byte[] address = in.readNBytes(length);
+        if (address.length < length) {
+            throw new EOFException();
+        }
+        return new String(address, StandardCharsets.UTF_8);
+    }
+
+    private static int magic(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt();
+        } catch (EOFException e) {
+            return 0;
+        }
+    }
+
+    static void appendTo(File source, File target) throws IOException {
+        int magic = magic(source);
+        if (magic != MAGIC && magic != LEGACY_MAGIC) {
+            throw new IOException("Not a journal file: " + source);
+        }
+        if (magic(target) != magic) {
+            throw new IOException("Cannot append journal " + source + " to " + target + " written in another format");
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(source));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(target, true))) {
+            in.skipNBytes(Integer.BYTES);
+            in.transferTo(out);
+        }
+    }
+}
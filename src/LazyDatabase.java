@@ -0,0 +1,113 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LazyDatabase implements Closeable {
+    public static final int DEFAULT_CACHE_SIZE = 65_536;
+
+    private final OrderIndex index;
+    private final int cacheSize;
+    private final LinkedHashMap<Integer, Order> cache;
+    private long hits;
+    private long misses;
+
+    private LazyDatabase(OrderIndex index, int cacheSize) {
+        this.index = index;
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<Integer, Order>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Order> eldest) {
+                return size() > LazyDatabase.this.cacheSize;
+            }
+        };
+    }
+
+    public static LazyDatabase open(String filePath) throws IOException {
+        return open(filePath, DEFAULT_CACHE_SIZE);
+    }
+
+    public static LazyDatabase open(String filePath, int cacheSize) throws IOException {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative.");
+        }
+        return new LazyDatabase(OrderIndex.open(new File(filePath), new File(filePath + ".idx")), cacheSize);
+    }
+
+    public int size() {
+        return index.recordCount();
+    }
+
+    public Order findById(int id) {
+        int ordinal = index.ordinalOf(id);
+        return ordinal < 0 ? null : load(ordinal);
+    }
+
+    public List<Order> findByAddress(String address) {
+        List<Order> result = new ArrayList<>();
+        index.forAddress(address, ordinal -> result.add(load(ordinal)));
+        return result;
+    }
+
+    public List<Order> findByDate(LocalDate date) {
+        return findByDateRange(date, date);
+    }
+
+    public List<Order> findByDateRange(LocalDate from, LocalDate to) {
+        List<Order> result = new ArrayList<>();
+        index.forDates(from, to, ordinal -> result.add(load(ordinal)));
+        return result;
+    }
+
+    public List<Order> findByWeight(double weight) {
+        return findByWeightRange(weight, weight);
+    }
+
+    public List<Order> findByWeightRange(double min, double max) {
+        List<Order> result = new ArrayList<>();
+        index.forWeights(min, max, ordinal -> result.add(load(ordinal)));
+        return result;
+    }
+
+    public synchronized long getCacheHits() {
+        return hits;
+    }
+
+    public synchronized long getCacheMisses() {
+        return misses;
+    }
+
+    public synchronized int getCachedRecords() {
+        return cache.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            cache.clear();
+        }
+        index.close();
+    }
+
+    private Order load(int ordinal) {
+        synchronized (this) {
+            Order cached = cache.get(ordinal);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        Order order = index.read(ordinal);
+        if (cacheSize > 0) {
+            synchronized (this) {
+                cache.put(ordinal, order);
+            }
+        }
+        return order;
+    }
+}
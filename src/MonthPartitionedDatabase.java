@@ -0,0 +1,562 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+public class MonthPartitionedDatabase {
+    private static final String MANIFEST_HEADER = "months=";
+
+    private static final ExecutorService partitionExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "database-partition");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Supplier<OrderStore> stores;
+    private final ConcurrentSkipListMap<YearMonth, Database> partitions = new ConcurrentSkipListMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile ConcurrentHashMap<Integer, YearMonth> directory = new ConcurrentHashMap<>();
+    private int staleIds;
+    private volatile String filePath;
+    private volatile OrderFile.Format fileFormat = OrderFile.Format.BINARY;
+
+    public MonthPartitionedDatabase() {
+        this(HeapOrderStore::new);
+    }
+
+    public MonthPartitionedDatabase(Supplier<OrderStore> stores) {
+        this.stores = stores;
+    }
+
+    public static YearMonth monthOf(Order order) {
+        return YearMonth.from(order.getDate());
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public void setFileFormat(OrderFile.Format fileFormat) {
+        this.fileFormat = fileFormat;
+    }
+
+    public NavigableSet<YearMonth> getMonths() {
+        return new TreeSet<>(partitions.keySet());
+    }
+
+    public int size(YearMonth month) {
+        Database partition = partitions.get(month);
+        return partition == null ? 0 : partition.size();
+    }
+
+    public boolean addRecord(Order order) {
+        writeLock.lock();
+        try {
+            if (contains(order.getId())) {
+                return false;
+            }
+            YearMonth month = monthOf(order);
+            partition(month).addRecord(order);
+            directory.put(order.getId(), month);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int addRecords(Collection<Order> orders) {
+        writeLock.lock();
+        try {
+            Map<YearMonth, List<Order>> routed = new HashMap<>();
+            IntHashSet batch = new IntHashSet(orders.size());
+            for (Order order : orders) {
+                if (batch.add(order.getId()) && !contains(order.getId())) {
+                    YearMonth month = monthOf(order);
+                    routed.computeIfAbsent(month, m -> new ArrayList<>()).add(order);
+                    directory.put(order.getId(), month);
+                }
+            }
+            int added = 0;
+            for (Map.Entry<YearMonth, List<Order>> entry : routed.entrySet()) {
+                added += partition(entry.getKey()).addRecords(entry.getValue());
+            }
+            return added;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void removeRecord(int id) {
+        writeLock.lock();
+        try {
+            YearMonth month = directory.remove(id);
+            Database partition = month == null ? null : partitions.get(month);
+            if (partition != null) {
+                partition.removeRecord(id);
+                dropIfEmpty(month, partition);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean editRecord(int id, String newAddress, LocalDate newDate, double newWeight) {
+        writeLock.lock();
+        try {
+            YearMonth month = directory.get(id);
+            Database partition = month == null ? null : partitions.get(month);
+            if (partition == null || partition.findById(id) == null) {
+                return false;
+            }
+            YearMonth target = YearMonth.from(newDate);
+            if (target.equals(month)) {
+                return partition.editRecord(id, newAddress, newDate, newWeight);
+            }
+            partition.removeRecord(id);
+            dropIfEmpty(month, partition);
+            partition(target).addRecord(new Order(id, newAddress, newDate, newWeight));
+            directory.put(id, target);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void removeRecordsByAddress(String address) {
+        removeMatching(partitions.keySet(), partition -> partition.findByAddress(address));
+    }
+
+    public void removeRecordsByDate(String date) {
+        LocalDate day = LocalDate.parse(date, Database.DATE_FORMAT);
+        removeMatching(List.of(YearMonth.from(day)), partition -> partition.findByDate(day));
+    }
+
+    public void removeRecordsByWeight(double weight) {
+        removeMatching(partitions.keySet(), partition -> partition.findByWeight(weight));
+    }
+
+    public void clear() {
+        writeLock.lock();
+        try {
+            partitions.clear();
+            directory = new ConcurrentHashMap<>();
+            staleIds = 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public Database dropMonth(YearMonth month) {
+        writeLock.lock();
+        try {
+            Database partition = partitions.remove(month);
+            if (partition != null) {
+                detached(partition.size());
+            }
+            return partition;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int dropMonthsBefore(YearMonth month) {
+        writeLock.lock();
+        try {
+            int dropped = 0;
+            NavigableMap<YearMonth, Database> expired = partitions.headMap(month, false);
+            for (Database partition : expired.values()) {
+                dropped += partition.size();
+            }
+            expired.clear();
+            detached(dropped);
+            return dropped;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int archiveMonth(YearMonth month, File archive) throws IOException {
+        Database partition = dropMonth(month);
+        if (partition == null) {
+            return 0;
+        }
+        List<Order> orders = partition.getRecords();
+        try {
+            OrderFile.writeAtomically(orders, archive, fileFormat);
+        } catch (IOException | RuntimeException e) {
+            reattach(month, partition);
+            throw e;
+        }
+        return orders.size();
+    }
+
+    public int restoreMonth(File archive) throws IOException {
+        return addRecords(OrderFile.read(archive));
+    }
+
+    public void exportMonth(YearMonth month, String filePath) throws IOException {
+        Database partition = partitions.get(month);
+        if (partition == null) {
+            throw new IOException("No orders in " + month);
+        }
+        partition.exportToXlsx(filePath);
+    }
+
+    public Order findById(int id) {
+        YearMonth month = directory.get(id);
+        Database partition = month == null ? null : partitions.get(month);
+        return partition == null ? null : partition.findById(id);
+    }
+
+    public List<Order> findByAddress(String address) {
+        return collect(partitions, partition -> partition.findByAddress(address));
+    }
+
+    public List<Order> findByAddressPrefix(String prefix) {
+        return collect(partitions, partition -> partition.findByAddressPrefix(prefix));
+    }
+
+    public List<Order> findByAddressContaining(String text) {
+        return collect(partitions, partition -> partition.findByAddressContaining(text));
+    }
+
+    public List<Order> findByAddressFuzzy(String text, int maxEdits) {
+        return collect(partitions, partition -> partition.findByAddressFuzzy(text, maxEdits));
+    }
+
+    public List<Order> findByDate(LocalDate date) {
+        Database partition = partitions.get(YearMonth.from(date));
+        return partition == null ? Collections.emptyList() : partition.findByDate(date);
+    }
+
+    public List<Order> findByWeight(double weight) {
+        return collect(partitions, partition -> partition.findByWeight(weight));
+    }
+
+    public List<Order> findByDateRange(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return Collections.emptyList();
+        }
+        return collect(partitions.subMap(YearMonth.from(from), true, YearMonth.from(to), true),
+                partition -> partition.findByDateRange(from, to));
+    }
+
+    public List<Order> findByWeightRange(double min, double max) {
+        return collect(partitions, partition -> partition.findByWeightRange(min, max));
+    }
+
+    public Stream<Order> query(Query query) {
+        return partitions.entrySet().stream()
+                .filter(entry -> query.mayMatch(entry.getKey()))
+                .flatMap(entry -> entry.getValue().query(query));
+    }
+
+    public List<Order> getRecords() {
+        return collect(partitions, Database::getRecords);
+    }
+
+    public Aggregate getTotals() {
+        Aggregate totals = new Aggregate();
+        for (Database partition : partitions.values()) {
+            totals.merge(partition.getTotals());
+        }
+        return totals;
+    }
+
+    public List<Order> top(int k, PageRequest.Sort by) {
+        return extremes(partitions, k, by, true, partition -> partition.top(k, by));
+    }
+
+    public List<Order> bottom(int k, PageRequest.Sort by) {
+        return extremes(partitions, k, by, false, partition -> partition.bottom(k, by));
+    }
+
+    public List<Order> top(int k, PageRequest.Sort by, String address) {
+        return extremes(partitions, k, by, true, partition -> partition.top(k, by, address));
+    }
+
+    public List<Order> bottom(int k, PageRequest.Sort by, String address) {
+        return extremes(partitions, k, by, false, partition -> partition.bottom(k, by, address));
+    }
+
+    public List<Order> top(int k, PageRequest.Sort by, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return Collections.emptyList();
+        }
+        return extremes(partitions.subMap(YearMonth.from(from), true, YearMonth.from(to), true), k, by, true,
+                partition -> partition.top(k, by, from, to));
+    }
+
+    public List<Order> bottom(int k, PageRequest.Sort by, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return Collections.emptyList();
+        }
+        return extremes(partitions.subMap(YearMonth.from(from), true, YearMonth.from(to), true), k, by, false,
+                partition -> partition.bottom(k, by, from, to));
+    }
+
+    public QuantileSketch getWeightSketch() {
+        return sketch(partitions);
+    }
+
+    public QuantileSketch getWeightSketch(YearMonth from, YearMonth to) {
+        return sketch(partitions.subMap(from, true, to, true));
+    }
+
+    public double weightQuantile(double q) {
+        return getWeightSketch().quantile(q);
+    }
+
+    public double weightQuantile(double q, YearMonth from, YearMonth to) {
+        return getWeightSketch(from, to).quantile(q);
+    }
+
+    public Aggregate getMonthlyTotals(YearMonth month) {
+        Database partition = partitions.get(month);
+        return partition == null ? new Aggregate() : partition.getTotals();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Database partition : partitions.values()) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    public void saveDatabase() throws IOException {
+        Map<YearMonth, List<Order>> snapshot = new LinkedHashMap<>();
+        List<YearMonth> previous;
+        writeLock.lock();
+        try {
+            previous = readManifest();
+            for (Map.Entry<YearMonth, Database> entry : partitions.entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().getRecords());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        OrderFile.Format format = fileFormat;
+        Map<YearMonth, Future<?>> writes = new TreeMap<>();
+        for (Map.Entry<YearMonth, List<Order>> entry : snapshot.entrySet()) {
+            File file = new File(partitionPath(filePath, entry.getKey()));
+            writes.put(entry.getKey(), partitionExecutor.submit(() -> {
+                OrderFile.writeAtomically(entry.getValue(), file, format);
+                return null;
+            }));
+        }
+        awaitAll("save", writes);
+        writeManifest(snapshot.keySet());
+        for (YearMonth month : previous) {
+            if (!snapshot.containsKey(month)) {
+                Files.deleteIfExists(new File(partitionPath(filePath, month)).toPath());
+            }
+        }
+    }
+
+    public void loadDatabase() throws IOException {
+        List<YearMonth> months = readManifest();
+        Map<YearMonth, Future<?>> reads = new TreeMap<>();
+        Map<YearMonth, Database> loaded = new ConcurrentHashMap<>();
+        for (YearMonth month : months) {
+            File file = new File(partitionPath(filePath, month));
+            reads.put(month, partitionExecutor.submit(() -> {
+                Database partition = new Database(stores.get());
+                partition.addRecords(OrderFile.read(file));
+                loaded.put(month, partition);
+                return null;
+            }));
+        }
+        awaitAll("load", reads);
+        writeLock.lock();
+        try {
+            partitions.clear();
+            directory = new ConcurrentHashMap<>();
+            staleIds = 0;
+            for (Map.Entry<YearMonth, Database> entry : loaded.entrySet()) {
+                reattach(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    static String partitionPath(String filePath, YearMonth month) {
+        return filePath + "." + month;
+    }
+
+    private boolean contains(int id) {
+        return findById(id) != null;
+    }
+
+    private Database partition(YearMonth month) {
+        return partitions.computeIfAbsent(month, m -> new Database(stores.get()));
+    }
+
+    private void dropIfEmpty(YearMonth month, Database partition) {
+        if (partition.size() == 0) {
+            partitions.remove(month, partition);
+        }
+    }
+
+    private void detached(int ids) {
+        staleIds += ids;
+        if (staleIds > directory.size() / 2) {
+            ConcurrentHashMap<Integer, YearMonth> live = new ConcurrentHashMap<>(Math.max(16, directory.size() - staleIds));
+            for (Map.Entry<YearMonth, Database> entry : partitions.entrySet()) {
+                for (Order order : entry.getValue().getRecords()) {
+                    live.put(order.getId(), entry.getKey());
+                }
+            }
+            directory = live;
+            staleIds = 0;
+        }
+    }
+
+    private void reattach(YearMonth month, Database partition) {
+        writeLock.lock();
+        try {
+            if (partitions.putIfAbsent(month, partition) == null) {
+                for (Order order : partition.getRecords()) {
+                    directory.put(order.getId(), month);
+                }
+            } else {
+                addRecords(partition.getRecords());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void removeMatching(Collection<YearMonth> months, Function<Database, List<Order>> matches) {
+        writeLock.lock();
+        try {
+            for (YearMonth month : new ArrayList<>(months)) {
+                Database partition = partitions.get(month);
+                if (partition == null) {
+                    continue;
+                }
+                List<Integer> ids = new ArrayList<>();
+                for (Order order : matches.apply(partition)) {
+                    ids.add(order.getId());
+                    directory.remove(order.getId());
+                }
+                partition.removeRecords(ids);
+                dropIfEmpty(month, partition);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static List<Order> extremes(NavigableMap<YearMonth, Database> partitions, int k, PageRequest.Sort by,
+                                        boolean highest, Function<Database, List<Order>> query) {
+        Comparator<Order> ranking = Database.ranking(by, highest);
+        List<Order> result = new ArrayList<>();
+        for (Database partition : (highest ? partitions.descendingMap() : partitions).values()) {
+            if (by == PageRequest.Sort.DATE && result.size() >= k) {
+                break;
+            }
+            result.addAll(query.apply(partition));
+        }
+        result.sort(ranking);
+        return result.size() > k ? new ArrayList<>(result.subList(0, k)) : result;
+    }
+
+    private static QuantileSketch sketch(Map<YearMonth, Database> partitions) {
+        QuantileSketch sketch = new QuantileSketch();
+        for (Database partition : partitions.values()) {
+            sketch.merge(partition.getWeightSketch());
+        }
+        return sketch;
+    }
+
+    private static List<Order> collect(Map<YearMonth, Database> partitions, Function<Database, List<Order>> query) {
+        List<Order> result = new ArrayList<>();
+        for (Database partition : partitions.values()) {
+            result.addAll(query.apply(partition));
+        }
+        return result.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    private void writeManifest(Collection<YearMonth> months) throws IOException {
+        StringBuilder content = new StringBuilder(MANIFEST_HEADER);
+        String separator = "";
+        for (YearMonth month : months) {
+            content.append(separator).append(month);
+            separator = ",";
+        }
+        content.append(System.lineSeparator());
+        File tmp = new File(filePath + ".tmp");
+        Files.write(tmp.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), new File(filePath).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<YearMonth> readManifest() throws IOException {
+        File manifest = new File(filePath);
+        List<YearMonth> months = new ArrayList<>();
+        if (!manifest.exists()) {
+            return months;
+        }
+        String content = new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8).trim();
+        if (!content.startsWith(MANIFEST_HEADER)) {
+            throw new IOException(filePath + " is not a partitioned database manifest");
+        }
+        try {
+            for (String month : content.substring(MANIFEST_HEADER.length()).split(",")) {
+                if (!month.isEmpty()) {
+                    months.add(YearMonth.parse(month));
+                }
+            }
+        } catch (DateTimeParseException e) {
+            throw new IOException("Corrupt partition manifest " + filePath, e);
+        }
+        return months;
+    }
+
+    private static void awaitAll(String action, Map<YearMonth, Future<?>> tasks) throws IOException {
+        Map<YearMonth, Throwable> failed = new TreeMap<>();
+        for (Map.Entry<YearMonth, Future<?>> entry : tasks.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.put(entry.getKey(), e);
+            } catch (ExecutionException e) {
+                failed.put(entry.getKey(), e.getCause());
+            }
+        }
+        if (!failed.isEmpty()) {
+            Map.Entry<YearMonth, Throwable> first = failed.entrySet().iterator().next();
+            throw new IOException("Failed to " + action + " partition" + (failed.size() == 1 ? " " : "s ")
+                    + failed.keySet(), first.getValue());
+        }
+    }
+}
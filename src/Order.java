@@ -3,6 +3,8 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 
 public class Order implements Serializable {
+    private static final long serialVersionUID = -2101903598026880361L;
+
     private int id;
     private String address;
     private LocalDate date;
@@ -0,0 +1,313 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public final class OrderCodec {
+    static final int MAGIC = 0x4F52445A;
+    static final int VERSION = 1;
+    static final int FLAG_DEFLATE = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int NO_ADDRESS = 0;
+    private static final int RAW_WEIGHT = 1;
+    private static final long MAX_SCALED = 1L << 53;
+
+    private OrderCodec() {
+    }
+
+    public static void write(Collection<Order> orders, File file, boolean deflate) throws IOException {
+        List<Order> sorted = new ArrayList<>(orders);
+        sorted.sort(Comparator.comparingInt(Order::getId));
+        HashMap<String, Integer> frequencies = new HashMap<>();
+        for (Order order : sorted) {
+            if (order.getAddress() != null) {
+                frequencies.merge(order.getAddress(), 1, Integer::sum);
+            }
+        }
+        List<String> dictionary = new ArrayList<>(frequencies.keySet());
+        dictionary.sort(Comparator.comparing((String address) -> frequencies.get(address)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        HashMap<String, Integer> codes = new HashMap<>();
+        for (int i = 0; i < dictionary.size(); i++) {
+            codes.put(dictionary.get(i), i + 1);
+        }
+
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            DataOutputStream header = new DataOutputStream(stream);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(deflate ? FLAG_DEFLATE : 0);
+            header.writeInt(sorted.size());
+            OutputStream body = new BufferedOutputStream(stream, BUFFER_SIZE);
+            Deflater deflater = deflate ? new Deflater(Deflater.BEST_SPEED) : null;
+            try {
+                if (deflater != null) {
+                    body = new DeflaterOutputStream(body, deflater, BUFFER_SIZE);
+                }
+                VarintOutput out = new VarintOutput(body);
+                out.writeVarint(dictionary.size());
+                for (String address : dictionary) {
+                    byte[] bytes = address.getBytes(StandardCharsets.UTF_8);
+                    out.writeVarint(bytes.length);
+                    out.write(bytes);
+                }
+                long previousId = 0;
+                for (int i = 0; i < sorted.size(); i++) {
+                    long id = sorted.get(i).getId();
+                    out.writeVarint(i == 0 ? zigzag(id) : id - previousId - 1);
+                    previousId = id;
+                }
+                long previousDay = 0;
+                for (Order order : sorted) {
+                    long day = order.getDate().toEpochDay();
+                    out.writeVarint(zigzag(day - previousDay));
+                    previousDay = day;
+                }
+                for (Order order : sorted) {
+                    out.writeVarint(order.getAddress() == null ? NO_ADDRESS : codes.get(order.getAddress()));
+                }
+                for (Order order : sorted) {
+                    writeWeight(out, order.getWeight());
+                }
+                out.flush();
+                if (body instanceof DeflaterOutputStream) {
+                    ((DeflaterOutputStream) body).finish();
+                }
+                body.flush();
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+            }
+            stream.getChannel().force(true);
+        }
+    }
+
+    public static void read(File file, Consumer<Order> sink) throws IOException {
+        try (FileInputStream stream = new FileInputStream(file)) {
+            DataInputStream header = new DataInputStream(stream);
+            int flags;
+            int recordCount;
+            try {
+                if (header.readInt() != MAGIC) {
+                    throw new IOException("Not an encoded database file: " + file);
+                }
+                int version = header.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported encoded database file version " + version + ": " + file);
+                }
+                flags = header.readInt();
+                recordCount = header.readInt();
+            } catch (EOFException e) {
+                throw new IOException("Truncated database file: " + file, e);
+            }
+            if (recordCount < 0) {
+                throw new IOException("Corrupt database header: " + file);
+            }
+            Inflater inflater = (flags & FLAG_DEFLATE) != 0 ? new Inflater() : null;
+            try {
+                InputStream body = inflater != null ? new InflaterInputStream(stream, inflater, BUFFER_SIZE) : stream;
+                VarintInput in = new VarintInput(body, file);
+                String[] dictionary = new String[in.readCount()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = new String(in.readBytes(in.readCount()), StandardCharsets.UTF_8);
+                }
+                int[] ids = new int[recordCount];
+                long id = 0;
+                for (int i = 0; i < recordCount; i++) {
+                    id = i == 0 ? unzigzag(in.readVarint()) : id + in.readVarint() + 1;
+                    ids[i] = (int) id;
+                }
+                long[] days = new long[recordCount];
+                long day = 0;
+                for (int i = 0; i < recordCount; i++) {
+                    day += unzigzag(in.readVarint());
+                    days[i] = day;
+                }
+                int[] codes = new int[recordCount];
+                for (int i = 0; i < recordCount; i++) {
+                    long code = in.readVarint();
+                    if (code > dictionary.length) {
+                        throw new IOException("Corrupt address code " + code + " in " + file);
+                    }
+                    codes[i] = (int) code;
+                }
+                for (int i = 0; i < recordCount; i++) {
+                    String address = codes[i] == NO_ADDRESS ? null : dictionary[codes[i] - 1];
+                    sink.accept(new Order(ids[i], address, LocalDate.ofEpochDay(days[i]), readWeight(in)));
+                }
+            } finally {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
+    }
+
+    public static boolean isEncoded(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        }
+    }
+
+    public static boolean isCompressed(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION && (in.readInt() & FLAG_DEFLATE) != 0;
+        }
+    }
+
+    private static void writeWeight(VarintOutput out, double weight) throws IOException {
+        long scaled = Math.round(weight * 100);
+        if (Math.abs(scaled) < MAX_SCALED && Double.compare(scaled / 100.0, weight) == 0) {
+            out.writeVarint(zigzag(scaled) << 1);
+        } else {
+            out.writeVarint(RAW_WEIGHT);
+            out.writeLong(Double.doubleToRawLongBits(weight));
+        }
+    }
+
+    private static double readWeight(VarintInput in) throws IOException {
+        long tag = in.readVarint();
+        if (tag == RAW_WEIGHT) {
+            return Double.longBitsToDouble(in.readLong());
+        }
+        return unzigzag(tag >>> 1) / 100.0;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class VarintOutput {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        VarintOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeVarint(long value) throws IOException {
+            if (position > buffer.length - 10) {
+                flush();
+            }
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(long value) throws IOException {
+            if (position > buffer.length - 8) {
+                flush();
+            }
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void write(byte[] bytes) throws IOException {
+            flush();
+            out.write(bytes);
+        }
+
+        void flush() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private static final class VarintInput {
+        private final InputStream in;
+        private final File file;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+
+        VarintInput(InputStream in, File file) {
+            this.in = in;
+            this.file = file;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt varint in " + file);
+        }
+
+        int readCount() throws IOException {
+            long count = readVarint();
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt length " + count + " in " + file);
+            }
+            return (int) count;
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int copied = 0;
+            while (copied < length) {
+                if (position == limit) {
+                    fill();
+                }
+                int chunk = Math.min(length - copied, limit - position);
+                System.arraycopy(buffer, position, bytes, copied, chunk);
+                position += chunk;
+                copied += chunk;
+            }
+            return bytes;
+        }
+
+        private int readByte() throws IOException {
+            if (position == limit) {
+                fill();
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        private void fill() throws IOException {
+            int read = in.read(buffer);
+            if (read <= 0) {
+                throw new IOException("Truncated encoded database file: " + file);
+            }
+            position = 0;
+            limit = read;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+public class OrderFile {
+    public enum Format {
+        BINARY, ENCODED, COMPRESSED
+    }
+
+    static final int MAGIC = 0x4F524442;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int RECORD_SIZE = 20;
+    static final int NO_ADDRESS = -1;
+
+    private static final int WINDOW = 1 << 24;
+
+    private OrderFile() {
+    }
+
+    public static void write(Collection<Order> orders, File file) throws IOException {
+        HashMap<String, Integer> codes = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        long stringTableSize = 0;
+        for (Order order : orders) {
+            String address = order.getAddress();
+            if (address != null && !codes.containsKey(address)) {
+                byte[] bytes = address.getBytes(StandardCharsets.UTF_8);
+                codes.put(address, strings.size());
+                strings.add(bytes);
+                stringTableSize += 4 + bytes.length;
+            }
+        }
+        long stringTableOffset = HEADER_SIZE + (long) orders.size() * RECORD_SIZE;
+        long fileSize = stringTableOffset + stringTableSize;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedCursor cursor = new MappedCursor(channel, FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            MappedByteBuffer buffer = cursor.ensure(HEADER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(orders.size());
+            buffer.putInt(strings.size());
+            buffer.putLong(stringTableOffset);
+            for (Order order : orders) {
+                buffer = cursor.ensure(RECORD_SIZE);
+                buffer.putInt(order.getId());
+                buffer.putInt((int) order.getDate().toEpochDay());
+                buffer.putDouble(order.getWeight());
+                buffer.putInt(order.getAddress() == null ? NO_ADDRESS : codes.get(order.getAddress()));
+            }
+            for (byte[] bytes : strings) {
+                buffer = cursor.ensure(4 + bytes.length);
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+            cursor.force();
+        }
+    }
+
+    public static void write(Collection<Order> orders, File file, Format format) throws IOException {
+        if (format == Format.BINARY) {
+            write(orders, file);
+        } else {
+            OrderCodec.write(orders, file, format == Format.COMPRESSED);
+        }
+    }
+
+    public static void writeAtomically(Collection<Order> orders, File file) throws IOException {
+        writeAtomically(orders, file, Format.BINARY);
+    }
+
+    public static void writeAtomically(Collection<Order> orders, File file, Format format) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        write(orders, tmp, format);
+        replace(tmp, file);
+    }
+
+    static void replace(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        File directory = target.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // not every platform can open or sync a directory; the rename itself is still atomic
+            }
+        }
+    }
+
+    public static List<Order> read(File file) throws IOException {
+        List<Order> orders = new ArrayList<>();
+        read(file, orders::add);
+        return orders;
+    }
+
+    public static void read(File file, Consumer<Order> sink) throws IOException {
+        if (isLegacy(file)) {
+            for (Order order : readLegacy(file)) {
+                sink.accept(order);
+            }
+            return;
+        }
+        if (OrderCodec.isEncoded(file)) {
+            OrderCodec.read(file, sink);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Truncated database file: " + file);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a database file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported database file version " + version + ": " + file);
+            }
+            int recordCount = header.getInt();
+            int stringCount = header.getInt();
+            long stringTableOffset = header.getLong();
+            if (recordCount < 0 || stringCount < 0 || stringCount > (fileSize - stringTableOffset) / 4
+                    || stringTableOffset != HEADER_SIZE + (long) recordCount * RECORD_SIZE || stringTableOffset > fileSize) {
+                throw new IOException("Corrupt database header: " + file);
+            }
+
+            String[] strings = new String[stringCount];
+            MappedCursor cursor = new MappedCursor(channel, FileChannel.MapMode.READ_ONLY, stringTableOffset, fileSize);
+            long remaining = fileSize - stringTableOffset;
+            for (int i = 0; i < stringCount; i++) {
+                if (remaining < 4) {
+                    throw new IOException("Truncated string table in " + file);
+                }
+                int length = cursor.ensure(4).getInt();
+                remaining -= 4;
+                if (length < 0 || length > remaining) {
+                    throw new IOException("Corrupt string length " + length + " in " + file);
+                }
+                remaining -= length;
+                byte[] bytes = new byte[length];
+                cursor.ensure(length).get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            cursor = new MappedCursor(channel, FileChannel.MapMode.READ_ONLY, HEADER_SIZE, stringTableOffset);
+            for (int i = 0; i < recordCount; i++) {
+                MappedByteBuffer buffer = cursor.ensure(RECORD_SIZE);
+                int id = buffer.getInt();
+                int day = buffer.getInt();
+                double weight = buffer.getDouble();
+                int address = buffer.getInt();
+                if (address != NO_ADDRESS && (address < 0 || address >= stringCount)) {
+                    throw new IOException("Corrupt address code " + address + " in " + file);
+                }
+                sink.accept(new Order(id, address == NO_ADDRESS ? null : strings[address], LocalDate.ofEpochDay(day), weight));
+            }
+        }
+    }
+
+    public static boolean isLegacy(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == 0xAC && in.read() == 0xED;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Order> readLegacy(File file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (List<Order>) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unreadable serialized database: " + file, e);
+        }
+    }
+
+    public static void convert(File source, File target) throws IOException {
+        convert(source, target, Format.BINARY);
+    }
+
+    public static void convert(File source, File target, Format format) throws IOException {
+        List<Order> orders = read(source);
+        File tmp = new File(target.getPath() + ".tmp");
+        write(orders, tmp, format);
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Format formatOf(File file) throws IOException {
+        if (OrderCodec.isEncoded(file)) {
+            return OrderCodec.isCompressed(file) ? Format.COMPRESSED : Format.ENCODED;
+        }
+        return Format.BINARY;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Format format = null;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--format") && i + 1 < args.length) {
+                format = Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: OrderFile [--format binary|encoded|compressed] <file.ser|file.bak>... (converted in place)");
+            System.exit(1);
+        }
+        for (String path : paths) {
+            File file = new File(path);
+            if (isLegacy(file) || (format != null && formatOf(file) != format)) {
+                long before = file.length();
+                convert(file, file, format == null ? Format.BINARY : format);
+                System.out.println("Converted " + path + " (" + before + " -> " + file.length() + " bytes)");
+            } else {
+                System.out.println("Skipped " + path + " (already in " + formatOf(file).name().toLowerCase(Locale.ROOT) + " format)");
+            }
+        }
+    }
+
+    private static final class MappedCursor {
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private final long limit;
+        private MappedByteBuffer buffer;
+        private long base;
+
+        MappedCursor(FileChannel channel, FileChannel.MapMode mode, long position, long limit) {
+            this.channel = channel;
+            this.mode = mode;
+            this.limit = limit;
+            this.base = position;
+        }
+
+        MappedByteBuffer ensure(int bytes) throws IOException {
+            if (buffer != null && buffer.remaining() >= bytes) {
+                return buffer;
+            }
+            long position = buffer == null ? base : base + buffer.position();
+            if (position + bytes > limit) {
+                throw new EOFException("Unexpected end of database file at offset " + position);
+            }
+            if (buffer != null && mode == FileChannel.MapMode.READ_WRITE) {
+                buffer.force();
+            }
+            long size = Math.max(bytes, Math.min(WINDOW, limit - position));
+            buffer = channel.map(mode, position, size);
+            base = position;
+            return buffer;
+        }
+
+        void force() {
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+public class OrderImporter {
+    private static final int CHUNK_SIZE = 10_000;
+
+    private final Database database;
+    private final int threads;
+
+    public OrderImporter(Database database) {
+        this(database, Runtime.getRuntime().availableProcessors());
+    }
+
+    public OrderImporter(Database database, int threads) {
+        this.database = database;
+        this.threads = Math.max(1, threads);
+    }
+
+    public Result importFile(File file) throws IOException {
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".xlsx")) {
+            return importXlsx(file);
+        }
+        return importCsv(file);
+    }
+
+    public Result importCsv(File file) throws IOException {
+        try (Pipeline pipeline = new Pipeline(file);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            char delimiter = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                    line = line.substring(1);
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (delimiter == 0) {
+                    delimiter = line.indexOf(';') >= 0 && line.indexOf(',') < 0 ? ';' : ',';
+                }
+                pipeline.accept("line " + lineNumber, splitCsv(line, delimiter));
+            }
+            return pipeline.finish();
+        }
+    }
+
+    public Result importXlsx(File file) throws IOException {
+        try (Pipeline pipeline = new Pipeline(file);
+             OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader reader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    pipeline.startSheet();
+                    XMLReader parser = SAXHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null, strings,
+                            new SheetRows(pipeline, sheets.getSheetName()), new ImportDataFormatter(), false));
+                    parser.parse(new InputSource(sheet));
+                }
+            }
+            return pipeline.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Failed to read " + file, e);
+        }
+    }
+
+    static String[] splitCsv(String line, char delimiter) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    static Order parseRow(String[] fields) {
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Expected 4 columns (ID, Address, Date, Weight) but found " + fields.length + ".");
+        }
+        int id;
+        try {
+            id = Integer.parseInt(fields[0].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ID must be an integer.");
+        }
+        if (id < 1) {
+            throw new IllegalArgumentException("ID must be positive.");
+        }
+        LocalDate date;
+        try {
+            date = LocalDate.parse(fields[2].trim(), Database.DATE_FORMAT);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Date must be in format dd.MM.yyyy.");
+        }
+        double weight;
+        try {
+            weight = Double.parseDouble(fields[3].trim().replace(',', '.'));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Weight must be a number.");
+        }
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("Weight must be positive.");
+        }
+        return new Order(id, fields[1].trim(), date, weight);
+    }
+
+    private static boolean isHeader(String[] fields) {
+        return fields.length > 0 && fields[0].trim().equalsIgnoreCase("ID");
+    }
+
+    public static final class Result {
+        private final long imported;
+        private final long rejected;
+        private final File errorReport;
+
+        Result(long imported, long rejected, File errorReport) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.errorReport = errorReport;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public File getErrorReport() {
+            return errorReport;
+        }
+
+        @Override
+        public String toString() {
+            return "Imported " + imported + " orders, rejected " + rejected
+                    + (errorReport == null ? "." : " (see " + errorReport.getAbsolutePath() + ").");
+        }
+    }
+
+    private static final class Chunk {
+        final List<String> positions = new ArrayList<>(CHUNK_SIZE);
+        final List<String[]> rows = new ArrayList<>(CHUNK_SIZE);
+        final List<Order> orders = new ArrayList<>();
+        final List<String> orderPositions = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+
+        Chunk parse() {
+            for (int i = 0; i < rows.size(); i++) {
+                try {
+                    orders.add(parseRow(rows.get(i)));
+                    orderPositions.add(positions.get(i));
+                } catch (IllegalArgumentException e) {
+                    errors.add(positions.get(i) + ": " + e.getMessage() + " [" + String.join(" | ", rows.get(i)) + "]");
+                }
+            }
+            rows.clear();
+            return this;
+        }
+    }
+
+    private final class Pipeline implements Closeable {
+        private final File source;
+        private final File reportFile;
+        private final ExecutorService workers;
+        private final ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        private Chunk current = new Chunk();
+        private boolean headerChecked;
+        private Writer report;
+        private long imported;
+        private long rejected;
+
+        Pipeline(File source) {
+            this.source = source;
+            this.reportFile = new File(source.getPath() + ".errors.txt");
+            this.reportFile.delete();
+            this.workers = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "order-import");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        void startSheet() {
+            headerChecked = false;
+        }
+
+        void accept(String position, String[] fields) throws IOException {
+            if (!headerChecked) {
+                headerChecked = true;
+                if (isHeader(fields)) {
+                    return;
+                }
+            }
+            current.positions.add(position);
+            current.rows.add(fields);
+            if (current.rows.size() == CHUNK_SIZE) {
+                submit();
+            }
+        }
+
+        private void submit() throws IOException {
+            Chunk chunk = current;
+            current = new Chunk();
+            inFlight.add(workers.submit(chunk::parse));
+            while (inFlight.size() > threads * 2) {
+                drain(inFlight.poll());
+            }
+        }
+
+        private void drain(Future<Chunk> future) throws IOException {
+            Chunk chunk;
+            try {
+                chunk = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import of " + source + " interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException("Import of " + source + " failed", e.getCause());
+            }
+            for (String error : chunk.errors) {
+                reject(error);
+            }
+            List<Order> duplicates = new ArrayList<>();
+            imported += database.addRecords(chunk.orders, duplicates::add);
+            if (!duplicates.isEmpty()) {
+                IdentityHashMap<Order, String> positions = new IdentityHashMap<>();
+                for (int i = 0; i < chunk.orders.size(); i++) {
+                    positions.put(chunk.orders.get(i), chunk.orderPositions.get(i));
+                }
+                for (Order duplicate : duplicates) {
+                    reject(positions.get(duplicate) + ": Record with this ID already exists. [" + duplicate + "]");
+                }
+            }
+        }
+
+        private void reject(String error) throws IOException {
+            if (report == null) {
+                report = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8));
+            }
+            report.write(error);
+            report.write(System.lineSeparator());
+            rejected++;
+        }
+
+        Result finish() throws IOException {
+            if (!current.rows.isEmpty()) {
+                submit();
+            }
+            while (!inFlight.isEmpty()) {
+                drain(inFlight.poll());
+            }
+            return new Result(imported, rejected, report == null ? null : reportFile);
+        }
+
+        @Override
+        public void close() throws IOException {
+            workers.shutdownNow();
+            if (report != null) {
+                report.close();
+            }
+        }
+    }
+
+    private static final class SheetRows implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final Pipeline pipeline;
+        private final String sheetName;
+        private final String[] fields = new String[4];
+        private int nextColumn;
+
+        SheetRows(Pipeline pipeline, String sheetName) {
+            this.pipeline = pipeline;
+            this.sheetName = sheetName;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            Arrays.fill(fields, "");
+            nextColumn = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (String.join("", fields).isBlank()) {
+                return;
+            }
+            try {
+                pipeline.accept(sheetName + " row " + (rowNum + 1), fields.clone());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference == null ? nextColumn : new CellReference(cellReference).getCol();
+            nextColumn = column + 1;
+            if (column < fields.length) {
+                fields[column] = formattedValue == null ? "" : formattedValue;
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+
+    private static final class ImportDataFormatter extends DataFormatter {
+        ImportDataFormatter() {
+            super(Locale.ROOT);
+        }
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                return DateUtil.getJavaDate(value, use1904Windowing).toInstant()
+                        .atZone(ZoneId.systemDefault()).toLocalDate().format(Database.DATE_FORMAT);
+            }
+            return super.formatRawCellContents(value, formatIndex, formatString, use1904Windowing);
+        }
+    }
+}
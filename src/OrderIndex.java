@@ -0,0 +1,349 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+public class OrderIndex implements Closeable {
+    static final int MAGIC = 0x4F524458;
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 40;
+
+    private static final int ENTRY_SIZE = 8;
+
+    private final FileChannel dbChannel;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer db;
+    private final MappedByteBuffer index;
+    private final int recordCount;
+    private final int stringCount;
+    private final int weightCount;
+    private final long dateSection;
+    private final long weightSection;
+    private final long addressSection;
+    private final long weightValueSection;
+    private final long stringOffsetSection;
+    private final long sortedCodeSection;
+
+    private OrderIndex(FileChannel dbChannel, FileChannel indexChannel, MappedByteBuffer db, MappedByteBuffer index) {
+        this.dbChannel = dbChannel;
+        this.indexChannel = indexChannel;
+        this.db = db;
+        this.index = index;
+        this.recordCount = index.getInt(8);
+        this.stringCount = index.getInt(12);
+        this.weightCount = index.getInt(16);
+        this.dateSection = HEADER_SIZE + (long) recordCount * ENTRY_SIZE;
+        this.weightSection = dateSection + (long) recordCount * ENTRY_SIZE;
+        this.addressSection = weightSection + (long) recordCount * ENTRY_SIZE;
+        this.weightValueSection = addressSection + (long) recordCount * ENTRY_SIZE;
+        this.stringOffsetSection = weightValueSection + (long) weightCount * 8;
+        this.sortedCodeSection = stringOffsetSection + (long) stringCount * 8;
+    }
+
+    public static OrderIndex open(File dbFile, File indexFile) throws IOException {
+        if (!isCurrent(dbFile, indexFile)) {
+            build(dbFile, indexFile);
+        }
+        FileChannel dbChannel = FileChannel.open(dbFile.toPath(), StandardOpenOption.READ);
+        try {
+            FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+            try {
+                return new OrderIndex(dbChannel, indexChannel, map(dbChannel, dbFile), map(indexChannel, indexFile));
+            } catch (IOException | RuntimeException e) {
+                indexChannel.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            dbChannel.close();
+            throw e;
+        }
+    }
+
+    public static boolean isCurrent(File dbFile, File indexFile) throws IOException {
+        if (!indexFile.exists() || indexFile.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            BasicFileAttributes source = Files.readAttributes(dbFile.toPath(), BasicFileAttributes.class);
+            in.skipBytes(12);
+            return in.readInt() == sourceKey(source) && in.readLong() == source.size()
+                    && in.readLong() == source.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public static void build(File dbFile, File indexFile) throws IOException {
+        if (OrderFile.isLegacy(dbFile)) {
+            throw new IOException(dbFile + " uses the legacy serialized format; convert it with OrderFile first");
+        }
+        try (FileChannel channel = FileChannel.open(dbFile.toPath(), StandardOpenOption.READ)) {
+            BasicFileAttributes source = Files.readAttributes(dbFile.toPath(), BasicFileAttributes.class);
+            MappedByteBuffer db = map(channel, dbFile);
+            checkHeader(db, dbFile);
+            int recordCount = db.getInt(8);
+            int stringCount = db.getInt(12);
+            long stringTableOffset = db.getLong(16);
+
+            long[] ids = new long[recordCount];
+            long[] dates = new long[recordCount];
+            long[] addresses = new long[recordCount];
+            long[] weightBits = new long[recordCount];
+            for (int ordinal = 0; ordinal < recordCount; ordinal++) {
+                int position = OrderFile.HEADER_SIZE + ordinal * OrderFile.RECORD_SIZE;
+                ids[ordinal] = entry(db.getInt(position), ordinal);
+                dates[ordinal] = entry(db.getInt(position + 4), ordinal);
+                weightBits[ordinal] = sortable(db.getDouble(position + 8));
+                int address = db.getInt(position + 16);
+                if (address != OrderFile.NO_ADDRESS && (address < 0 || address >= stringCount)) {
+                    throw new IOException("Corrupt address code " + address + " in " + dbFile);
+                }
+                addresses[ordinal] = entry(address, ordinal);
+            }
+            Arrays.sort(ids);
+            Arrays.sort(dates);
+            Arrays.sort(addresses);
+
+            long[] weightValues = weightBits.clone();
+            Arrays.sort(weightValues);
+            int weightCount = 0;
+            for (int i = 0; i < weightValues.length; i++) {
+                if (i == 0 || weightValues[i] != weightValues[weightCount - 1]) {
+                    weightValues[weightCount++] = weightValues[i];
+                }
+            }
+            long[] weights = new long[recordCount];
+            for (int ordinal = 0; ordinal < recordCount; ordinal++) {
+                weights[ordinal] = entry(Arrays.binarySearch(weightValues, 0, weightCount, weightBits[ordinal]), ordinal);
+            }
+            weightBits = null;
+            Arrays.sort(weights);
+
+            long[] stringOffsets = new long[stringCount];
+            String[] strings = new String[stringCount];
+            long position = stringTableOffset;
+            for (int code = 0; code < stringCount; code++) {
+                if (position + 4 > db.capacity()) {
+                    throw new IOException("Truncated string table in " + dbFile);
+                }
+                int length = db.getInt((int) position);
+                if (length < 0 || length > db.capacity() - position - 4) {
+                    throw new IOException("Corrupt string length " + length + " in " + dbFile);
+                }
+                stringOffsets[code] = position;
+                strings[code] = readString(db, position);
+                position += 4 + length;
+            }
+            Integer[] sortedCodes = new Integer[stringCount];
+            for (int code = 0; code < stringCount; code++) {
+                sortedCodes[code] = code;
+            }
+            Arrays.sort(sortedCodes, (a, b) -> strings[a].compareTo(strings[b]));
+
+            File tmp = new File(indexFile.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(recordCount);
+                out.writeInt(stringCount);
+                out.writeInt(weightCount);
+                out.writeInt(sourceKey(source));
+                out.writeLong(source.size());
+                out.writeLong(source.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+                for (long[] section : new long[][]{ids, dates, weights, addresses}) {
+                    for (long entry : section) {
+                        out.writeLong(entry);
+                    }
+                }
+                for (int i = 0; i < weightCount; i++) {
+                    out.writeDouble(fromSortable(weightValues[i]));
+                }
+                for (long offset : stringOffsets) {
+                    out.writeLong(offset);
+                }
+                for (int code : sortedCodes) {
+                    out.writeInt(code);
+                }
+            }
+            Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    public int recordCount() {
+        return recordCount;
+    }
+
+    public int ordinalOf(int id) {
+        int low = 0;
+        int high = recordCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int key = index.getInt(entryPosition(HEADER_SIZE, mid));
+            if (key < id) {
+                low = mid + 1;
+            } else if (key > id) {
+                high = mid - 1;
+            } else {
+                return index.getInt(entryPosition(HEADER_SIZE, mid) + 4);
+            }
+        }
+        return -1;
+    }
+
+    public Order read(int ordinal) {
+        int position = OrderFile.HEADER_SIZE + ordinal * OrderFile.RECORD_SIZE;
+        int code = db.getInt(position + 16);
+        return new Order(db.getInt(position), code == OrderFile.NO_ADDRESS ? null : address(code),
+                LocalDate.ofEpochDay(db.getInt(position + 4)), db.getDouble(position + 8));
+    }
+
+    public void forDates(LocalDate from, LocalDate to, IntConsumer ordinals) {
+        long fromDay = Math.max(Integer.MIN_VALUE, from.toEpochDay());
+        long toDay = Math.min(Integer.MAX_VALUE, to.toEpochDay());
+        if (fromDay <= toDay) {
+            scan(dateSection, (int) fromDay, (int) toDay, ordinals);
+        }
+    }
+
+    public void forWeights(double min, double max, IntConsumer ordinals) {
+        int fromRank = weightRank(min, false);
+        int toRank = weightRank(max, true);
+        if (fromRank <= toRank) {
+            scan(weightSection, fromRank, toRank, ordinals);
+        }
+    }
+
+    public void forAddress(String address, IntConsumer ordinals) {
+        int code = address == null ? OrderFile.NO_ADDRESS : codeOf(address);
+        if (code != OrderFile.NO_ADDRESS || address == null) {
+            scan(addressSection, code, code, ordinals);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            indexChannel.close();
+        } finally {
+            dbChannel.close();
+        }
+    }
+
+    private void scan(long section, int fromKey, int toKey, IntConsumer ordinals) {
+        int low = 0;
+        int high = recordCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index.getInt(entryPosition(section, mid)) < fromKey) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < recordCount; i++) {
+            int position = entryPosition(section, i);
+            if (index.getInt(position) > toKey) {
+                break;
+            }
+            ordinals.accept(index.getInt(position + 4));
+        }
+    }
+
+    private int weightRank(double weight, boolean last) {
+        int low = 0;
+        int high = weightCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Double.compare(index.getDouble((int) (weightValueSection + (long) mid * 8)), weight);
+            if (cmp < 0 || (last && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return last ? low - 1 : low;
+    }
+
+    private int codeOf(String address) {
+        int low = 0;
+        int high = stringCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int code = index.getInt((int) (sortedCodeSection + (long) mid * 4));
+            int cmp = address(code).compareTo(address);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return code;
+            }
+        }
+        return OrderFile.NO_ADDRESS;
+    }
+
+    private String address(int code) {
+        return readString(db, index.getLong((int) (stringOffsetSection + (long) code * 8)));
+    }
+
+    private static String readString(MappedByteBuffer buffer, long position) {
+        int length = buffer.getInt((int) position);
+        byte[] bytes = new byte[length];
+        buffer.get((int) position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int entryPosition(long section, int entry) {
+        return (int) (section + (long) entry * ENTRY_SIZE);
+    }
+
+    private static long entry(int key, int ordinal) {
+        return ((long) key << 32) | ordinal;
+    }
+
+    private static long sortable(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private static double fromSortable(long sortable) {
+        return Double.longBitsToDouble(sortable ^ ((sortable >> 63) & Long.MAX_VALUE));
+    }
+
+    private static void checkHeader(MappedByteBuffer db, File file) throws IOException {
+        if (db.capacity() >= 4 && db.getInt(0) == OrderCodec.MAGIC) {
+            throw new IOException("Encoded database files cannot be opened lazily; convert with OrderFile --format binary: " + file);
+        }
+        if (db.capacity() < OrderFile.HEADER_SIZE || db.getInt(0) != OrderFile.MAGIC) {
+            throw new IOException("Not a database file: " + file);
+        }
+        if (db.getInt(4) != OrderFile.VERSION) {
+            throw new IOException("Unsupported database file version " + db.getInt(4) + ": " + file);
+        }
+        if (db.getInt(8) < 0 || db.getInt(12) < 0 || db.getLong(16) > db.capacity()
+                || db.getLong(16) != OrderFile.HEADER_SIZE + (long) db.getInt(8) * OrderFile.RECORD_SIZE) {
+            throw new IOException("Corrupt database header: " + file);
+        }
+    }
+
+    private static int sourceKey(BasicFileAttributes source) {
+        return source.fileKey() == null ? 0 : source.fileKey().hashCode();
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, File file) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(file + " is too large to open lazily (" + size + " bytes)");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+}
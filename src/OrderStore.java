@@ -0,0 +1,21 @@
+import java.util.List;
+
+public interface OrderStore {
+    boolean add(Order order);
+
+    Order get(int id);
+
+    Order remove(int id);
+
+    boolean contains(int id);
+
+    void replace(Order order);
+
+    int size();
+
+    void clear();
+
+    List<Order> snapshot();
+
+    int[] ids();
+}
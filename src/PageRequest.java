@@ -0,0 +1,80 @@
+import java.util.Locale;
+
+public final class PageRequest {
+    public enum Sort {
+        ID, DATE, WEIGHT
+    }
+
+    private final Sort sort;
+    private final boolean descending;
+    private final int offset;
+    private final int limit;
+    private final boolean hasAfter;
+    private final int after;
+
+    private PageRequest(Sort sort, boolean descending, int offset, int limit, boolean hasAfter, int after) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative.");
+        }
+        this.sort = sort;
+        this.descending = descending;
+        this.offset = offset;
+        this.limit = limit;
+        this.hasAfter = hasAfter;
+        this.after = after;
+    }
+
+    public static PageRequest first(int limit) {
+        return new PageRequest(Sort.ID, false, 0, limit, false, 0);
+    }
+
+    public PageRequest orderBy(Sort sort) {
+        return new PageRequest(sort, false, offset, limit, hasAfter, after);
+    }
+
+    public PageRequest descending() {
+        return new PageRequest(sort, true, offset, limit, hasAfter, after);
+    }
+
+    public PageRequest offset(int offset) {
+        return new PageRequest(sort, descending, offset, limit, hasAfter, after);
+    }
+
+    public PageRequest limit(int limit) {
+        return new PageRequest(sort, descending, offset, limit, hasAfter, after);
+    }
+
+    public PageRequest after(int id) {
+        return new PageRequest(sort, descending, offset, limit, true, id);
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean hasAfter() {
+        return hasAfter;
+    }
+
+    public int getAfter() {
+        return after;
+    }
+
+    @Override
+    public String toString() {
+        return sort.name().toLowerCase(Locale.ROOT) + (descending ? " desc" : " asc")
+                + (hasAfter ? " after " + after : "") + " offset " + offset + " limit " + limit;
+    }
+}
@@ -0,0 +1,297 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import javafx.collections.ObservableListBase;
+
+public class PagedOrderList extends ObservableListBase<Order> {
+    private static final int PAGE_SIZE = 256;
+    private static final int CACHED_PAGES = 64;
+    private static final long BUSY_WAIT_MILLIS = 50;
+
+    private final Database database;
+    private int[] ids = new int[0];
+    private int size;
+    private IntHashSet present = new IntHashSet();
+    private Predicate<Order> filter;
+    private final IntHashSet missedPages = new IntHashSet();
+    private DatabaseChange deferred;
+    private final LinkedHashMap<Integer, Order[]> pages = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Order[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    public PagedOrderList(Database database) {
+        this.database = database;
+    }
+
+    public void setIds(int[] newIds) {
+        setIds(newIds, null);
+    }
+
+    private void setIds(int[] newIds, Predicate<Order> newFilter) {
+        int oldSize = size;
+        Map<Integer, Order[]> oldPages = new HashMap<>(pages);
+        ids = newIds;
+        size = newIds.length;
+        filter = newFilter;
+        present = new IntHashSet(size);
+        for (int id : newIds) {
+            present.add(id);
+        }
+        pages.clear();
+        missedPages.clear();
+        deferred = null;
+        beginChange();
+        if (oldSize > 0) {
+            nextRemove(0, new IdView(oldSize, oldPages));
+        }
+        if (size > 0) {
+            nextAdd(0, size);
+        }
+        endChange();
+    }
+
+    public void setOrders(Collection<Order> orders, Predicate<Order> filter) {
+        int[] newIds = new int[orders.size()];
+        int i = 0;
+        for (Order order : orders) {
+            newIds[i++] = order.getId();
+        }
+        setIds(newIds, filter);
+    }
+
+    public Predicate<Order> getFilter() {
+        return filter;
+    }
+
+    public void apply(DatabaseChange change) {
+        if (deferred != null) {
+            deferred.merge(change);
+            change = deferred;
+            deferred = null;
+        }
+        int[] updated = change.getUpdated();
+        int[] added = change.getAdded();
+        int[] changed = Arrays.copyOf(updated, updated.length + added.length);
+        System.arraycopy(added, 0, changed, updated.length, added.length);
+        Order[] orders = null;
+        if (filter != null) {
+            orders = new Order[changed.length];
+            try {
+                if (!database.tryFindByIds(changed, 0, orders, BUSY_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    deferred = change;
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                deferred = change;
+                return;
+            }
+        }
+        IntHashSet dropped = new IntHashSet();
+        IntHashSet refreshed = new IntHashSet();
+        List<Integer> appended = new ArrayList<>();
+        for (int id : change.getRemoved()) {
+            if (present.contains(id)) {
+                dropped.add(id);
+            }
+        }
+        for (int i = 0; i < changed.length; i++) {
+            boolean visible = orders == null || orders[i] != null && filter.test(orders[i]);
+            classify(changed[i], visible, dropped, refreshed, appended);
+        }
+        if (dropped.isEmpty() && refreshed.isEmpty() && appended.isEmpty() && missedPages.isEmpty()) {
+            return;
+        }
+        beginChange();
+        if (!dropped.isEmpty() || !refreshed.isEmpty()) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int id = ids[i];
+                if (dropped.contains(id)) {
+                    nextRemove(kept, cached(i));
+                    present.remove(id);
+                    continue;
+                }
+                if (refreshed.contains(id)) {
+                    pages.remove(i / PAGE_SIZE);
+                    nextUpdate(kept);
+                }
+                ids[kept++] = id;
+            }
+            if (kept < size) {
+                size = kept;
+                pages.clear();
+            }
+        }
+        if (!appended.isEmpty()) {
+            int from = size;
+            if (size + appended.size() > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size + appended.size(), size + (size >> 1)));
+            }
+            for (int id : appended) {
+                ids[size++] = id;
+                present.add(id);
+            }
+            invalidateFrom(from);
+            nextAdd(from, size);
+        }
+        missedPages.forEach(page -> {
+            for (int i = page * PAGE_SIZE; i < Math.min(size, (page + 1) * PAGE_SIZE); i++) {
+                nextUpdate(i);
+            }
+        });
+        missedPages.clear();
+        endChange();
+    }
+
+    @Override
+    public Order get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        int page = index / PAGE_SIZE;
+        Order[] orders = pages.get(page);
+        if (orders == null) {
+            int from = page * PAGE_SIZE;
+            orders = new Order[Math.min(PAGE_SIZE, size - from)];
+            try {
+                if (!database.tryFindByIds(ids, from, orders, BUSY_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    missedPages.add(page);
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            pages.put(page, orders);
+        }
+        return orders[index % PAGE_SIZE];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void add(int index, Order order) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(16, size + (size >> 1)));
+        }
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = order.getId();
+        present.add(order.getId());
+        size++;
+        invalidateFrom(index);
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+    }
+
+    @Override
+    public Order set(int index, Order order) {
+        Order old = get(index);
+        present.remove(ids[index]);
+        ids[index] = order.getId();
+        present.add(order.getId());
+        pages.remove(index / PAGE_SIZE);
+        beginChange();
+        nextSet(index, old);
+        endChange();
+        return old;
+    }
+
+    @Override
+    public Order remove(int index) {
+        Order old = get(index);
+        present.remove(ids[index]);
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        invalidateFrom(index);
+        beginChange();
+        nextRemove(index, old);
+        endChange();
+        return old;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Order> filter) {
+        int kept = 0;
+        boolean changed = false;
+        beginChange();
+        for (int i = 0; i < size; i++) {
+            Order order = get(i);
+            if (order == null || filter.test(order)) {
+                nextRemove(kept, order);
+                present.remove(ids[i]);
+                changed = true;
+            } else {
+                ids[kept++] = ids[i];
+            }
+        }
+        size = kept;
+        pages.clear();
+        endChange();
+        return changed;
+    }
+
+    @Override
+    public void clear() {
+        setIds(new int[0]);
+    }
+
+    private void classify(int id, boolean visible, IntHashSet dropped, IntHashSet refreshed, List<Integer> appended) {
+        if (present.contains(id)) {
+            if (visible) {
+                refreshed.add(id);
+            } else {
+                dropped.add(id);
+            }
+        } else if (visible) {
+            appended.add(id);
+        }
+    }
+
+    private Order cached(int index) {
+        Order[] page = pages.get(index / PAGE_SIZE);
+        return page == null ? null : page[index % PAGE_SIZE];
+    }
+
+    private void invalidateFrom(int index) {
+        pages.keySet().removeIf(page -> page >= index / PAGE_SIZE);
+    }
+
+    private static final class IdView extends AbstractList<Order> {
+        private final int size;
+        private final Map<Integer, Order[]> pages;
+
+        IdView(int size, Map<Integer, Order[]> pages) {
+            this.size = size;
+            this.pages = pages;
+        }
+
+        @Override
+        public Order get(int index) {
+            Order[] page = pages.get(index / PAGE_SIZE);
+            return page == null ? null : page[index % PAGE_SIZE];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+public class QuantileSketch {
+    public static final double DEFAULT_ACCURACY = 0.01;
+
+    private static final int GROWTH = 64;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Bins positive = new Bins();
+    private final Bins negative = new Bins();
+    private long zeroCount;
+    private long count;
+
+    public QuantileSketch() {
+        this(DEFAULT_ACCURACY);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void add(double value) {
+        update(value, 1);
+    }
+
+    public void remove(double value) {
+        update(value, -1);
+    }
+
+    public void merge(QuantileSketch other) {
+        if (Double.compare(relativeAccuracy, other.relativeAccuracy) != 0) {
+            throw new IllegalArgumentException("Cannot merge sketches with accuracy " + relativeAccuracy + " and " + other.relativeAccuracy);
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    public double quantile(double q) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(q * (count - 1));
+        long seen = 0;
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen > rank) {
+                return -value(negative.offset + i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return value(positive.offset + i);
+            }
+        }
+        return value(positive.offset + positive.counts.length - 1);
+    }
+
+    void clear() {
+        positive.clear();
+        negative.clear();
+        zeroCount = 0;
+        count = 0;
+    }
+
+    QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(relativeAccuracy);
+        copy.merge(this);
+        return copy;
+    }
+
+    private void update(double value, int delta) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (value == 0) {
+            if (delta < 0 && zeroCount == 0) {
+                return;
+            }
+            zeroCount += delta;
+        } else if (!(value > 0 ? positive : negative).add(index(Math.abs(value)), delta)) {
+            return;
+        }
+        count += delta;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(Math.max(Double.MIN_NORMAL, Math.min(Double.MAX_VALUE, magnitude))) / logGamma);
+    }
+
+    private double value(int index) {
+        return Math.min(Double.MAX_VALUE, 2 * Math.pow(gamma, index) / (gamma + 1));
+    }
+
+    private static final class Bins {
+        private long[] counts = new long[0];
+        private int offset;
+
+        boolean add(int index, long delta) {
+            if (delta < 0 && (index < offset || index >= offset + counts.length || counts[index - offset] < -delta)) {
+                return false;
+            }
+            cover(index, index);
+            counts[index - offset] += delta;
+            return true;
+        }
+
+        void merge(Bins other) {
+            if (other.counts.length == 0) {
+                return;
+            }
+            cover(other.offset, other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+
+        void clear() {
+            counts = new long[0];
+            offset = 0;
+        }
+
+        private void cover(int from, int to) {
+            if (counts.length == 0) {
+                offset = from - GROWTH / 2;
+                counts = new long[to - from + GROWTH];
+                return;
+            }
+            int end = offset + counts.length;
+            if (from >= offset && to < end) {
+                return;
+            }
+            int newOffset = from < offset ? from - GROWTH : offset;
+            int newEnd = to >= end ? to + GROWTH + 1 : end;
+            long[] grown = new long[newEnd - newOffset];
+            System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+            counts = grown;
+            offset = newOffset;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+public abstract class Query {
+    private static final int INTERSECT_RATIO = 8;
+
+    public static Query address(String address) {
+        return new AddressEquals(address);
+    }
+
+    public static Query date(LocalDate date) {
+        return dateBetween(date, date);
+    }
+
+    public static Query dateBetween(LocalDate from, LocalDate to) {
+        return new DateRange(from, to);
+    }
+
+    public static Query weight(double weight) {
+        return new WeightRange(weight, true, weight, true);
+    }
+
+    public static Query weightBetween(double min, double max) {
+        return new WeightRange(min, true, max, true);
+    }
+
+    public static Query weightAbove(double weight) {
+        return new WeightRange(weight, false, Double.POSITIVE_INFINITY, true);
+    }
+
+    public static Query weightAtLeast(double weight) {
+        return new WeightRange(weight, true, Double.POSITIVE_INFINITY, true);
+    }
+
+    public static Query weightBelow(double weight) {
+        return new WeightRange(Double.NEGATIVE_INFINITY, true, weight, false);
+    }
+
+    public static Query weightAtMost(double weight) {
+        return new WeightRange(Double.NEGATIVE_INFINITY, true, weight, true);
+    }
+
+    public static Query and(Query... parts) {
+        if (parts.length == 0) {
+            throw new IllegalArgumentException("and() needs at least one query.");
+        }
+        return parts.length == 1 ? parts[0] : new And(Arrays.asList(parts));
+    }
+
+    public static Query or(Query... parts) {
+        if (parts.length == 0) {
+            throw new IllegalArgumentException("or() needs at least one query.");
+        }
+        return parts.length == 1 ? parts[0] : new Or(Arrays.asList(parts));
+    }
+
+    public Query and(Query other) {
+        return and(this, other);
+    }
+
+    public Query or(Query other) {
+        return or(this, other);
+    }
+
+    public static Query parse(String text) {
+        List<Query> alternatives = new ArrayList<>();
+        for (String group : text.split("\\|")) {
+            List<Query> terms = new ArrayList<>();
+            for (String term : group.split(";")) {
+                if (!term.isBlank()) {
+                    terms.add(parseTerm(term.trim()));
+                }
+            }
+            if (terms.isEmpty()) {
+                throw new IllegalArgumentException("Empty query term in \"" + text + "\".");
+            }
+            alternatives.add(and(terms.toArray(new Query[0])));
+        }
+        if (alternatives.isEmpty()) {
+            throw new IllegalArgumentException("Empty query term in \"" + text + "\".");
+        }
+        return or(alternatives.toArray(new Query[0]));
+    }
+
+    private static Query parseTerm(String term) {
+        int op = 0;
+        while (op < term.length() && "=<>".indexOf(term.charAt(op)) < 0) {
+            op++;
+        }
+        if (op == term.length()) {
+            throw new IllegalArgumentException("Expected field=value in \"" + term + "\".");
+        }
+        int value = op + 1;
+        if (value < term.length() && term.charAt(value) == '=') {
+            value++;
+        }
+        String field = term.substring(0, op).trim().toLowerCase(Locale.ROOT);
+        String operator = term.substring(op, value);
+        String argument = term.substring(value).trim();
+        switch (field) {
+            case "address":
+                if (!operator.equals("=")) {
+                    throw new IllegalArgumentException("Address only supports '='.");
+                }
+                return address(argument);
+            case "date":
+                try {
+                    LocalDate date = LocalDate.parse(argument.split("-", 2)[0].trim(), Database.DATE_FORMAT);
+                    switch (operator) {
+                        case "=":
+                            String[] range = argument.split("-", 2);
+                            return range.length == 2
+                                    ? dateBetween(date, LocalDate.parse(range[1].trim(), Database.DATE_FORMAT))
+                                    : date(date);
+                        case "<":
+                            return dateBetween(LocalDate.MIN, date.minusDays(1));
+                        case "<=":
+                            return dateBetween(LocalDate.MIN, date);
+                        case ">":
+                            return dateBetween(date.plusDays(1), LocalDate.MAX);
+                        case ">=":
+                            return dateBetween(date, LocalDate.MAX);
+                        default:
+                            throw new IllegalArgumentException("Unknown operator " + operator + ".");
+                    }
+                } catch (DateTimeParseException e) {
+                    throw new IllegalArgumentException("Date must be in format dd.MM.yyyy.");
+                }
+            case "weight":
+                try {
+                    switch (operator) {
+                        case "=":
+                            String[] range = argument.split("-", 2);
+                            double weight = Double.parseDouble(range[0].trim());
+                            return range.length == 2 ? weightBetween(weight, Double.parseDouble(range[1].trim())) : weight(weight);
+                        case "<":
+                            return weightBelow(Double.parseDouble(argument));
+                        case "<=":
+                            return weightAtMost(Double.parseDouble(argument));
+                        case ">":
+                            return weightAbove(Double.parseDouble(argument));
+                        case ">=":
+                            return weightAtLeast(Double.parseDouble(argument));
+                        default:
+                            throw new IllegalArgumentException("Unknown operator " + operator + ".");
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Weight must be a number.");
+                }
+            default:
+                throw new IllegalArgumentException("Unknown field \"" + field + "\"; use address, date or weight.");
+        }
+    }
+
+    public abstract boolean test(Order order);
+
+    abstract long estimate(Database database);
+
+    abstract IntHashSet candidates(Database database);
+
+    abstract String explain(Database database);
+
+    boolean mayMatch(YearMonth month) {
+        return true;
+    }
+
+    private static IntHashSet intersect(IntHashSet a, IntHashSet b) {
+        IntHashSet small = a.size() <= b.size() ? a : b;
+        IntHashSet large = small == a ? b : a;
+        IntHashSet result = new IntHashSet(small.size());
+        small.forEach(id -> {
+            if (large.contains(id)) {
+                result.add(id);
+            }
+        });
+        return result;
+    }
+
+    private static final class AddressEquals extends Query {
+        private final String address;
+
+        AddressEquals(String address) {
+            this.address = address;
+        }
+
+        @Override
+        public boolean test(Order order) {
+            return Objects.equals(order.getAddress(), address);
+        }
+
+        @Override
+        long estimate(Database database) {
+            return database.addressCardinality(address);
+        }
+
+        @Override
+        IntHashSet candidates(Database database) {
+            return database.addressIds(address);
+        }
+
+        @Override
+        String explain(Database database) {
+            return toString() + " [address index, " + estimate(database) + " rows]";
+        }
+
+        @Override
+        public String toString() {
+            return "address=" + address;
+        }
+    }
+
+    private static final class DateRange extends Query {
+        private final LocalDate from;
+        private final LocalDate to;
+
+        DateRange(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean test(Order order) {
+            return !order.getDate().isBefore(from) && !order.getDate().isAfter(to);
+        }
+
+        @Override
+        long estimate(Database database) {
+            return database.dateCardinality(from, to);
+        }
+
+        @Override
+        IntHashSet candidates(Database database) {
+            return database.dateIds(from, to);
+        }
+
+        @Override
+        String explain(Database database) {
+            return toString() + " [date index, ~" + estimate(database) + " rows]";
+        }
+
+        @Override
+        boolean mayMatch(YearMonth month) {
+            return !month.atEndOfMonth().isBefore(from) && !month.atDay(1).isAfter(to);
+        }
+
+        @Override
+        public String toString() {
+            if (from.equals(to)) {
+                return "date=" + from.format(Database.DATE_FORMAT);
+            }
+            return "date=" + (from.equals(LocalDate.MIN) ? "" : from.format(Database.DATE_FORMAT))
+                    + ".." + (to.equals(LocalDate.MAX) ? "" : to.format(Database.DATE_FORMAT));
+        }
+    }
+
+    private static final class WeightRange extends Query {
+        private final double min;
+        private final boolean minInclusive;
+        private final double max;
+        private final boolean maxInclusive;
+
+        WeightRange(double min, boolean minInclusive, double max, boolean maxInclusive) {
+            this.min = min;
+            this.minInclusive = minInclusive;
+            this.max = max;
+            this.maxInclusive = maxInclusive;
+        }
+
+        @Override
+        public boolean test(Order order) {
+            double weight = order.getWeight();
+            return (minInclusive ? weight >= min : weight > min) && (maxInclusive ? weight <= max : weight < max);
+        }
+
+        @Override
+        long estimate(Database database) {
+            return database.weightCardinality(min, max);
+        }
+
+        @Override
+        IntHashSet candidates(Database database) {
+            return database.weightIds(min, minInclusive, max, maxInclusive);
+        }
+
+        @Override
+        String explain(Database database) {
+            return toString() + " [weight index, ~" + estimate(database) + " rows]";
+        }
+
+        @Override
+        public String toString() {
+            return "weight" + (minInclusive ? "[" : "(") + min + ", " + max + (maxInclusive ? "]" : ")");
+        }
+    }
+
+    private static final class And extends Query {
+        private final List<Query> parts;
+
+        And(List<Query> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean test(Order order) {
+            for (Query part : parts) {
+                if (!part.test(order)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        long estimate(Database database) {
+            long estimate = Long.MAX_VALUE;
+            for (Query part : parts) {
+                estimate = Math.min(estimate, part.estimate(database));
+            }
+            return estimate;
+        }
+
+        @Override
+        IntHashSet candidates(Database database) {
+            List<Query> plan = plan(database);
+            IntHashSet result = plan.get(0).candidates(database);
+            for (int i = 1; i < plan.size() && !result.isEmpty(); i++) {
+                if (plan.get(i).estimate(database) > (long) result.size() * INTERSECT_RATIO) {
+                    break;
+                }
+                result = intersect(result, plan.get(i).candidates(database));
+            }
+            return result;
+        }
+
+        private List<Query> plan(Database database) {
+            long[] estimates = new long[parts.size()];
+            Integer[] order = new Integer[parts.size()];
+            for (int i = 0; i < order.length; i++) {
+                estimates[i] = parts.get(i).estimate(database);
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(estimates[a], estimates[b]));
+            List<Query> plan = new ArrayList<>(order.length);
+            for (int i : order) {
+                plan.add(parts.get(i));
+            }
+            return plan;
+        }
+
+        @Override
+        String explain(Database database) {
+            return plan(database).stream().map(part -> part.explain(database))
+                    .collect(Collectors.joining(" AND ", "(", ")"));
+        }
+
+        @Override
+        boolean mayMatch(YearMonth month) {
+            for (Query part : parts) {
+                if (!part.mayMatch(month)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return parts.stream().map(Object::toString).collect(Collectors.joining("; "));
+        }
+    }
+
+    private static final class Or extends Query {
+        private final List<Query> parts;
+
+        Or(List<Query> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean test(Order order) {
+            for (Query part : parts) {
+                if (part.test(order)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        long estimate(Database database) {
+            long estimate = 0;
+            for (Query part : parts) {
+                estimate += part.estimate(database);
+            }
+            return estimate;
+        }
+
+        @Override
+        IntHashSet candidates(Database database) {
+            IntHashSet result = new IntHashSet((int) Math.min(database.recordCount(), estimate(database)));
+            for (Query part : parts) {
+                result.addAll(part.candidates(database));
+            }
+            return result;
+        }
+
+        @Override
+        String explain(Database database) {
+            return parts.stream().map(part -> part.explain(database)).collect(Collectors.joining(" OR ", "(", ")"));
+        }
+
+        @Override
+        boolean mayMatch(YearMonth month) {
+            for (Query part : parts) {
+                if (part.mayMatch(month)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return parts.stream().map(Object::toString).collect(Collectors.joining(" | "));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+public class RangeHistogram {
+    private static final int DAYS_PER_BUCKET = 32;
+    private static final int WEIGHT_BUCKET_SHIFT = 48;
+
+    private final TreeMap<Long, long[]> buckets = new TreeMap<>();
+    private long total;
+
+    public void add(long bucket, long count) {
+        buckets.computeIfAbsent(bucket, b -> new long[1])[0] += count;
+        total += count;
+    }
+
+    public void remove(long bucket, long count) {
+        long[] counter = buckets.get(bucket);
+        if (counter == null) {
+            return;
+        }
+        counter[0] -= count;
+        total -= count;
+        if (counter[0] <= 0) {
+            buckets.remove(bucket);
+        }
+    }
+
+    public long count(long fromBucket, long toBucket) {
+        if (fromBucket > toBucket) {
+            return 0;
+        }
+        long count = 0;
+        for (long[] counter : buckets.subMap(fromBucket, true, toBucket, true).values()) {
+            count += counter[0];
+        }
+        return count;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public void clear() {
+        buckets.clear();
+        total = 0;
+    }
+
+    static <K> RangeHistogram of(Map<K, IntHashSet> index, ToLongFunction<K> bucket) {
+        RangeHistogram histogram = new RangeHistogram();
+        for (Map.Entry<K, IntHashSet> entry : index.entrySet()) {
+            histogram.add(bucket.applyAsLong(entry.getKey()), entry.getValue().size());
+        }
+        return histogram;
+    }
+
+    static long dateBucket(LocalDate date) {
+        return Math.floorDiv(date.toEpochDay(), DAYS_PER_BUCKET);
+    }
+
+    static long weightBucket(double weight) {
+        long bits = Double.doubleToLongBits(weight);
+        return (bits ^ ((bits >> 63) & Long.MAX_VALUE)) >> WEIGHT_BUCKET_SHIFT;
+    }
+}
@@ -0,0 +1,30 @@
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ShardFailureException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final TreeMap<Integer, Throwable> failures;
+
+    public ShardFailureException(String action, Map<Integer, Throwable> failures) {
+        super(message(action, failures), failures.values().iterator().next());
+        this.failures = new TreeMap<>(failures);
+    }
+
+    public Map<Integer, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    private static String message(String action, Map<Integer, Throwable> failures) {
+        StringBuilder message = new StringBuilder("Failed to " + action + " shard");
+        message.append(failures.size() == 1 ? " " : "s ");
+        String separator = "";
+        for (Map.Entry<Integer, Throwable> failure : new TreeMap<>(failures).entrySet()) {
+            message.append(separator).append(failure.getKey()).append(" (").append(failure.getValue()).append(')');
+            separator = ", ";
+        }
+        return message.toString();
+    }
+}
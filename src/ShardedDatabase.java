@@ -0,0 +1,503 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+public class ShardedDatabase {
+    private static final String MANIFEST_HEADER = "shards=";
+    private static final String GENERATION_HEADER = "generation=";
+
+    private static final ExecutorService shardExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "database-shard");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Database[] shards;
+    private final AtomicReferenceArray<Throwable> failures;
+    private volatile String filePath;
+    private volatile int generation;
+
+    public ShardedDatabase(int shardCount) {
+        this(shardCount, HeapOrderStore::new);
+    }
+
+    public ShardedDatabase(int shardCount, Supplier<OrderStore> stores) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive.");
+        }
+        shards = new Database[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Database(stores.get());
+        }
+        failures = new AtomicReferenceArray<>(shardCount);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public Database getShard(int shard) {
+        return shards[shard];
+    }
+
+    public int shardOf(int id) {
+        int h = id * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    public Map<Integer, Throwable> getFailedShards() {
+        Map<Integer, Throwable> failed = new TreeMap<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (failures.get(i) != null) {
+                failed.put(i, failures.get(i));
+            }
+        }
+        return failed;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+        useGeneration(0);
+    }
+
+    private void useGeneration(int generation) {
+        this.generation = generation;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].setFilePath(shardPath(filePath, generation, i));
+        }
+    }
+
+    public void setJournalEnabled(boolean journalEnabled) {
+        for (Database shard : shards) {
+            shard.setJournalEnabled(journalEnabled);
+        }
+    }
+
+    public void setFileFormat(OrderFile.Format fileFormat) {
+        for (Database shard : shards) {
+            shard.setFileFormat(fileFormat);
+        }
+    }
+
+    public boolean addRecord(Order order) {
+        return writable(order.getId()).addRecord(order);
+    }
+
+    public int addRecords(Collection<Order> orders) {
+        List<List<Order>> routed = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            routed.add(new ArrayList<>());
+        }
+        for (Order order : orders) {
+            routed.get(shardOf(order.getId())).add(order);
+        }
+        int added = 0;
+        for (int i = 0; i < shards.length; i++) {
+            if (!routed.get(i).isEmpty()) {
+                added += writableShard(i).addRecords(routed.get(i));
+            }
+        }
+        return added;
+    }
+
+    public void removeRecord(int id) {
+        writable(id).removeRecord(id);
+    }
+
+    public boolean editRecord(int id, String newAddress, LocalDate newDate, double newWeight) {
+        return writable(id).editRecord(id, newAddress, newDate, newWeight);
+    }
+
+    public void removeRecordsByAddress(String address) {
+        for (Database shard : healthyShards()) {
+            shard.removeRecordsByAddress(address);
+        }
+    }
+
+    public void removeRecordsByDate(String date) {
+        for (Database shard : healthyShards()) {
+            shard.removeRecordsByDate(date);
+        }
+    }
+
+    public void removeRecordsByWeight(double weight) {
+        for (Database shard : healthyShards()) {
+            shard.removeRecordsByWeight(weight);
+        }
+    }
+
+    public void clear() {
+        for (Database shard : shards) {
+            shard.clear();
+        }
+    }
+
+    public Order findById(int id) {
+        int shard = shardOf(id);
+        return failures.get(shard) == null ? shards[shard].findById(id) : null;
+    }
+
+    public List<Order> findByAddress(String address) {
+        return collect(shard -> shard.findByAddress(address));
+    }
+
+    public List<Order> findByAddressPrefix(String prefix) {
+        return collect(shard -> shard.findByAddressPrefix(prefix));
+    }
+
+    public List<Order> findByAddressContaining(String text) {
+        return collect(shard -> shard.findByAddressContaining(text));
+    }
+
+    public List<Order> findByAddressFuzzy(String text, int maxEdits) {
+        return collect(shard -> shard.findByAddressFuzzy(text, maxEdits));
+    }
+
+    public List<Order> findByDate(LocalDate date) {
+        return collect(shard -> shard.findByDate(date));
+    }
+
+    public List<Order> findByWeight(double weight) {
+        return collect(shard -> shard.findByWeight(weight));
+    }
+
+    public List<Order> findByDateRange(LocalDate from, LocalDate to) {
+        return collect(shard -> shard.findByDateRange(from, to));
+    }
+
+    public List<Order> findByWeightRange(double min, double max) {
+        return collect(shard -> shard.findByWeightRange(min, max));
+    }
+
+    public Stream<Order> query(Query query) {
+        return healthyShards().stream().flatMap(shard -> shard.query(query));
+    }
+
+    public List<Order> getRecords() {
+        return collect(Database::getRecords);
+    }
+
+    public Aggregate getTotals() {
+        Aggregate totals = new Aggregate();
+        for (Database shard : healthyShards()) {
+            totals.merge(shard.getTotals());
+        }
+        return totals;
+    }
+
+    public List<Order> top(int k, PageRequest.Sort by) {
+        return merge(k, by, true, shard -> shard.top(k, by));
+    }
+
+    public List<Order> bottom(int k, PageRequest.Sort by) {
+        return merge(k, by, false, shard -> shard.bottom(k, by));
+    }
+
+    public List<Order> top(int k, PageRequest.Sort by, String address) {
+        return merge(k, by, true, shard -> shard.top(k, by, address));
+    }
+
+    public List<Order> bottom(int k, PageRequest.Sort by, String address) {
+        return merge(k, by, false, shard -> shard.bottom(k, by, address));
+    }
+
+    public List<Order> top(int k, PageRequest.Sort by, LocalDate from, LocalDate to) {
+        return merge(k, by, true, shard -> shard.top(k, by, from, to));
+    }
+
+    public List<Order> bottom(int k, PageRequest.Sort by, LocalDate from, LocalDate to) {
+        return merge(k, by, false, shard -> shard.bottom(k, by, from, to));
+    }
+
+    public QuantileSketch getWeightSketch() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (Database shard : healthyShards()) {
+            sketch.merge(shard.getWeightSketch());
+        }
+        return sketch;
+    }
+
+    public double weightQuantile(double q) {
+        return getWeightSketch().quantile(q);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Database shard : healthyShards()) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    public void saveDatabase() throws IOException {
+        int[] previous = readManifest();
+        if (previous[1] == generation && previous[0] != shards.length) {
+            startGeneration(generation + 1);
+        }
+        forEachShard("save", false, (i, shard) -> shard.saveDatabase());
+        writeManifest();
+        if (previous[1] != generation) {
+            deleteShards(previous[1], previous[0]);
+        }
+    }
+
+    public void loadDatabase() throws IOException {
+        int[] manifest = readManifest();
+        int stored = manifest[0];
+        int storedGeneration = manifest[1];
+        if (stored == shards.length) {
+            useGeneration(storedGeneration);
+            forEachShard("load", true, (i, shard) -> shard.loadDatabase());
+            return;
+        }
+        Map<Integer, Throwable> failed = new TreeMap<>();
+        List<Future<List<Order>>> reads = new ArrayList<>();
+        for (int i = 0; i < stored; i++) {
+            String path = shardPath(filePath, storedGeneration, i);
+            reads.add(shardExecutor.submit(() -> readShard(path)));
+        }
+        List<List<Order>> routed = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            routed.add(new ArrayList<>());
+        }
+        for (int i = 0; i < reads.size(); i++) {
+            Throwable failure = await(reads.get(i));
+            if (failure != null) {
+                failed.put(i, failure);
+            } else if (failed.isEmpty()) {
+                for (Order order : reads.get(i).resultNow()) {
+                    routed.get(shardOf(order.getId())).add(order);
+                }
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new ShardFailureException("reshard " + stored + " into " + shards.length + ": read", failed);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            failures.set(i, null);
+        }
+        closeJournal();
+        startGeneration(storedGeneration + 1);
+        forEachShard("reshard", false, (i, shard) -> {
+            shard.loadRecords(routed.get(i));
+            shard.saveDatabase();
+        });
+        writeManifest();
+        deleteShards(storedGeneration, stored);
+    }
+
+    private void startGeneration(int next) throws IOException {
+        for (int i = 0; i < shards.length; i++) {
+            deleteJournal(shardPath(filePath, next, i));
+        }
+        useGeneration(next);
+    }
+
+    private static List<Order> readShard(String path) throws IOException {
+        Database shard = new Database();
+        shard.setFilePath(path);
+        if (!shard.hasJournal()) {
+            return OrderFile.read(new File(path));
+        }
+        shard.recoverJournal();
+        return shard.getRecords();
+    }
+
+    private void deleteShards(int generation, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            String path = shardPath(filePath, generation, i);
+            Files.deleteIfExists(new File(path).toPath());
+            deleteJournal(path);
+        }
+    }
+
+    private static void deleteJournal(String shardPath) throws IOException {
+        Files.deleteIfExists(new File(shardPath + ".bak").toPath());
+        Files.deleteIfExists(new File(shardPath + ".log").toPath());
+        Files.deleteIfExists(new File(shardPath + ".log.old").toPath());
+    }
+
+    public void backupDatabase() throws IOException {
+        forEachShard("back up", false, (i, shard) -> shard.backupDatabase());
+    }
+
+    public void restoreDatabase() throws IOException {
+        int[] manifest = readManifest();
+        if (manifest[0] != shards.length) {
+            throw new IOException(filePath + " holds " + manifest[0] + " shards; load it to reshard before restoring");
+        }
+        useGeneration(manifest[1]);
+        forEachShard("restore", true, (i, shard) -> shard.restoreDatabase());
+    }
+
+    public void takeSnapshot(String label) {
+        for (Database shard : shards) {
+            shard.takeSnapshot(label);
+        }
+    }
+
+    public void restoreDatabase(Instant time) throws IOException {
+        forEachShard("restore", false, (i, shard) -> shard.restoreDatabase(time));
+    }
+
+    public void exportToXlsx(String filePath) throws IOException {
+        forEachShard("export", false, (i, shard) -> shard.exportToXlsx(exportPath(filePath, i)));
+    }
+
+    public void awaitCheckpoint() throws IOException {
+        forEachShard("checkpoint", false, (i, shard) -> shard.awaitCheckpoint());
+    }
+
+    public void closeJournal() {
+        for (Database shard : shards) {
+            shard.closeJournal();
+        }
+    }
+
+    static String shardPath(String filePath, int generation, int shard) {
+        return generation == 0 ? filePath + ".shard" + shard : filePath + ".g" + generation + ".shard" + shard;
+    }
+
+    static String exportPath(String filePath, int shard) {
+        int dot = filePath.lastIndexOf('.');
+        if (dot <= filePath.lastIndexOf(File.separatorChar)) {
+            dot = filePath.length();
+        }
+        return filePath.substring(0, dot) + "-shard" + shard + filePath.substring(dot);
+    }
+
+    private Database writable(int id) {
+        return writableShard(shardOf(id));
+    }
+
+    private Database writableShard(int shard) {
+        Throwable failure = failures.get(shard);
+        if (failure != null) {
+            throw new IllegalStateException("Shard " + shard + " is unavailable until it is restored", failure);
+        }
+        return shards[shard];
+    }
+
+    private List<Database> healthyShards() {
+        List<Database> healthy = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            if (failures.get(i) == null) {
+                healthy.add(shards[i]);
+            }
+        }
+        return healthy;
+    }
+
+    private List<Order> collect(Function<Database, List<Order>> query) {
+        List<Order> result = new ArrayList<>();
+        for (Database shard : healthyShards()) {
+            result.addAll(query.apply(shard));
+        }
+        return result;
+    }
+
+    private List<Order> merge(int k, PageRequest.Sort by, boolean highest, Function<Database, List<Order>> query) {
+        List<Order> result = collect(query);
+        result.sort(Database.ranking(by, highest));
+        return result.size() > k ? new ArrayList<>(result.subList(0, k)) : result;
+    }
+
+    private void writeManifest() throws IOException {
+        String content = MANIFEST_HEADER + shards.length + System.lineSeparator()
+                + GENERATION_HEADER + generation + System.lineSeparator();
+        File tmp = new File(filePath + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        OrderFile.replace(tmp, new File(filePath));
+    }
+
+    private int[] readManifest() throws IOException {
+        File manifest = new File(filePath);
+        if (!manifest.exists()) {
+            return new int[]{shards.length, generation};
+        }
+        String[] lines = new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8).trim().split("\\R");
+        if (!lines[0].startsWith(MANIFEST_HEADER)) {
+            throw new IOException(filePath + " is not a sharded database manifest");
+        }
+        try {
+            int count = Integer.parseInt(lines[0].substring(MANIFEST_HEADER.length()));
+            int stored = 0;
+            if (lines.length > 1 && lines[1].startsWith(GENERATION_HEADER)) {
+                stored = Integer.parseInt(lines[1].substring(GENERATION_HEADER.length()));
+            }
+            return new int[]{count, stored};
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt shard manifest " + filePath, e);
+        }
+    }
+
+    private void forEachShard(String action, boolean includeFailed, ShardTask task) throws ShardFailureException {
+        Map<Integer, Future<?>> running = new TreeMap<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (includeFailed || failures.get(i) == null) {
+                int shard = i;
+                running.put(i, shardExecutor.submit(() -> {
+                    task.run(shard, shards[shard]);
+                    return null;
+                }));
+            }
+        }
+        Map<Integer, Throwable> failed = new HashMap<>();
+        for (Map.Entry<Integer, Future<?>> entry : running.entrySet()) {
+            Throwable failure = await(entry.getValue());
+            if (includeFailed) {
+                failures.set(entry.getKey(), failure);
+                if (failure != null) {
+                    shards[entry.getKey()].clear();
+                }
+            }
+            if (failure != null) {
+                failed.put(entry.getKey(), failure);
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new ShardFailureException(action, failed);
+        }
+    }
+
+    private static Throwable await(Future<?> future) {
+        try {
+            future.get();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    private interface ShardTask {
+        void run(int shard, Database database) throws Exception;
+    }
+}
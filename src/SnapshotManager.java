@@ -0,0 +1,297 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public final class SnapshotManager {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    public static final class Snapshot {
+        private final long version;
+        private final long timestamp;
+        private final String label;
+
+        private Snapshot(long version, long timestamp, String label) {
+            this.version = version;
+            this.timestamp = timestamp;
+            this.label = label;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public Instant getTime() {
+            return Instant.ofEpochMilli(timestamp);
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        @Override
+        public String toString() {
+            return TIME_FORMAT.format(getTime()) + (label == null || label.isEmpty() ? "" : " " + label);
+        }
+    }
+
+    static final class Change {
+        private final int id;
+        private final Order before;
+        private final long timestamp;
+
+        private Change(int id, Order before, long timestamp) {
+            this.id = id;
+            this.before = before;
+            this.timestamp = timestamp;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        Order getBefore() {
+            return before;
+        }
+    }
+
+    private final ArrayDeque<Snapshot> snapshots = new ArrayDeque<>();
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+    private int maxSnapshots = 64;
+    private long maxAgeMillis = TimeUnit.DAYS.toMillis(1);
+    private int memoryLimit = 1 << 20;
+    private File spillFile;
+    private boolean temporarySpill;
+    private long spillVersion;
+    private long spilled;
+    private long version;
+    private long clock;
+
+    public synchronized void setRetention(int maxSnapshots, long maxAgeMillis) {
+        if (maxSnapshots < 1 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Retention must keep at least one snapshot for a non-negative age.");
+        }
+        this.maxSnapshots = maxSnapshots;
+        this.maxAgeMillis = maxAgeMillis;
+        retain();
+    }
+
+    public synchronized void setSpill(File spillFile, int memoryLimit) throws IOException {
+        if (memoryLimit < 2) {
+            throw new IllegalArgumentException("At least two changes must stay in memory.");
+        }
+        if (spilled > 0) {
+            List<Change> onDisk = readSpill(spillVersion);
+            for (int i = onDisk.size() - 1; i >= 0; i--) {
+                changes.addFirst(onDisk.get(i));
+            }
+            deleteSpill();
+        }
+        if (temporarySpill && this.spillFile != null) {
+            Files.deleteIfExists(this.spillFile.toPath());
+        }
+        this.spillFile = spillFile;
+        this.temporarySpill = false;
+        this.memoryLimit = memoryLimit;
+        if (changes.size() > memoryLimit) {
+            spill();
+        }
+    }
+
+    public synchronized List<Snapshot> list() {
+        retain();
+        return Collections.unmodifiableList(new ArrayList<>(snapshots));
+    }
+
+    public synchronized int retainedChanges() {
+        return (int) Math.min(Integer.MAX_VALUE, spilled + changes.size());
+    }
+
+    synchronized boolean isRecording() {
+        return !snapshots.isEmpty();
+    }
+
+    synchronized Snapshot take(String label) {
+        Snapshot snapshot = new Snapshot(version, tick(), label);
+        snapshots.addLast(snapshot);
+        retain();
+        return snapshot;
+    }
+
+    synchronized void record(int id, Order before) {
+        changes.addLast(new Change(id, before, tick()));
+        version++;
+        if (changes.size() > memoryLimit) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to spill snapshot history to " + spillFile, e);
+            }
+        }
+    }
+
+    synchronized long versionAt(Instant time) throws IOException {
+        retain();
+        Snapshot oldest = snapshots.peekFirst();
+        long timestamp = time.toEpochMilli();
+        if (oldest == null || timestamp < oldest.timestamp) {
+            throw new IllegalArgumentException("No snapshot history is retained for " + TIME_FORMAT.format(time));
+        }
+        long at = version;
+        for (Iterator<Change> it = changes.descendingIterator(); it.hasNext() && it.next().timestamp > timestamp; ) {
+            at--;
+        }
+        if (at == version - changes.size() && spilled > 0) {
+            List<Change> onDisk = readSpill(Math.max(spillVersion, oldest.version));
+            for (int i = onDisk.size() - 1; i >= 0 && onDisk.get(i).timestamp > timestamp; i--) {
+                at--;
+            }
+        }
+        return Math.max(at, oldest.version);
+    }
+
+    synchronized List<Change> since(long target) throws IOException {
+        retain();
+        Snapshot oldest = snapshots.peekFirst();
+        if (oldest == null || target < oldest.version || target > version) {
+            throw new IllegalArgumentException("Snapshot version " + target + " is no longer retained.");
+        }
+        List<Change> undo = new ArrayList<>((int) Math.min(Integer.MAX_VALUE, version - target));
+        long memoryVersion = version - changes.size();
+        long at = version;
+        for (Iterator<Change> it = changes.descendingIterator(); it.hasNext() && at > target; at--) {
+            undo.add(it.next());
+        }
+        if (target < memoryVersion) {
+            List<Change> onDisk = readSpill(target);
+            for (int i = onDisk.size() - 1; i >= 0; i--) {
+                undo.add(onDisk.get(i));
+            }
+        }
+        return undo;
+    }
+
+    synchronized void clear() {
+        snapshots.clear();
+        changes.clear();
+        deleteSpillQuietly();
+    }
+
+    private long tick() {
+        clock = Math.max(clock, System.currentTimeMillis());
+        return clock;
+    }
+
+    private void retain() {
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        while (snapshots.size() > maxSnapshots || (!snapshots.isEmpty() && snapshots.peekFirst().timestamp < cutoff)) {
+            snapshots.pollFirst();
+        }
+        long floor = snapshots.isEmpty() ? version : snapshots.peekFirst().version;
+        long memoryVersion = version - changes.size();
+        if (floor >= memoryVersion) {
+            deleteSpillQuietly();
+            for (long v = memoryVersion; v < floor; v++) {
+                changes.pollFirst();
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        if (spillFile == null) {
+            spillFile = File.createTempFile("orders", ".undo");
+            spillFile.deleteOnExit();
+            temporarySpill = true;
+        }
+        if (spilled == 0) {
+            spillVersion = version - changes.size();
+        }
+        int count = changes.size() - memoryLimit / 2;
+        long length = spilled > 0 ? spillFile.length() : 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile, spilled > 0), BUFFER_SIZE))) {
+            Iterator<Change> pending = changes.iterator();
+            for (int i = 0; i < count; i++) {
+                Change change = pending.next();
+                out.writeLong(change.timestamp);
+                out.writeInt(change.id);
+                Order before = change.before;
+                out.writeBoolean(before != null);
+                if (before != null) {
+                    out.writeBoolean(before.getAddress() != null);
+                    if (before.getAddress() != null) {
+                        byte[] address = before.getAddress().getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(address.length);
+                        out.write(address);
+                    }
+                    out.writeLong(before.getDate().toEpochDay());
+                    out.writeDouble(before.getWeight());
+                }
+            }
+        } catch (IOException e) {
+            try (RandomAccessFile file = new RandomAccessFile(spillFile, "rw")) {
+                file.setLength(length);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        for (int i = 0; i < count; i++) {
+            changes.pollFirst();
+        }
+        spilled += count;
+    }
+
+    private List<Change> readSpill(long from) throws IOException {
+        List<Change> result = new ArrayList<>((int) Math.min(Integer.MAX_VALUE, spilled - Math.max(0, from - spillVersion)));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile), BUFFER_SIZE))) {
+            for (long v = spillVersion; v < spillVersion + spilled; v++) {
+                long timestamp = in.readLong();
+                int id = in.readInt();
+                Order before = null;
+                if (in.readBoolean()) {
+                    String address = null;
+                    if (in.readBoolean()) {
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        address = new String(bytes, StandardCharsets.UTF_8);
+                    }
+                    before = new Order(id, address, LocalDate.ofEpochDay(in.readLong()), in.readDouble());
+                }
+                if (v >= from) {
+                    result.add(new Change(id, before, timestamp));
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated snapshot history " + spillFile, e);
+        }
+        return result;
+    }
+
+    private void deleteSpill() throws IOException {
+        spilled = 0;
+        if (spillFile != null) {
+            Files.deleteIfExists(spillFile.toPath());
+        }
+    }
+
+    private void deleteSpillQuietly() {
+        if (spilled == 0) {
+            return;
+        }
+        try {
+            deleteSpill();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.Arrays;
+
+public class SortedIntSet {
+    private static final int BLOCK_SIZE = 512;
+
+    private int[][] blocks;
+    private int[] counts;
+    private int[] offsets;
+    private int blockCount;
+    private int size;
+    private volatile boolean offsetsStale;
+
+    public SortedIntSet() {
+        this(16);
+    }
+
+    public SortedIntSet(int expectedSize) {
+        int capacity = Math.max(4, expectedSize / (BLOCK_SIZE / 2) + 1);
+        blocks = new int[capacity][];
+        counts = new int[capacity];
+        offsets = new int[capacity];
+    }
+
+    public static SortedIntSet of(int[] ids) {
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        SortedIntSet set = new SortedIntSet(sorted.length);
+        int fill = BLOCK_SIZE * 3 / 4;
+        for (int from = 0; from < sorted.length; from += fill) {
+            int to = Math.min(sorted.length, from + fill);
+            int[] block = new int[BLOCK_SIZE];
+            System.arraycopy(sorted, from, block, 0, to - from);
+            set.insertBlock(set.blockCount, block, to - from);
+        }
+        set.size = sorted.length;
+        return set;
+    }
+
+    public boolean add(int key) {
+        if (blockCount == 0) {
+            insertBlock(0, new int[BLOCK_SIZE], 0);
+        }
+        int b = blockFor(key);
+        int[] block = blocks[b];
+        int position = Arrays.binarySearch(block, 0, counts[b], key);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+        if (counts[b] == BLOCK_SIZE) {
+            int half = BLOCK_SIZE / 2;
+            int[] upper = new int[BLOCK_SIZE];
+            System.arraycopy(block, half, upper, 0, BLOCK_SIZE - half);
+            counts[b] = half;
+            insertBlock(b + 1, upper, BLOCK_SIZE - half);
+            if (position > half) {
+                b++;
+                position -= half;
+                block = upper;
+            }
+        }
+        System.arraycopy(block, position, block, position + 1, counts[b] - position);
+        block[position] = key;
+        counts[b]++;
+        size++;
+        offsetsStale = true;
+        return true;
+    }
+
+    public boolean remove(int key) {
+        if (blockCount == 0) {
+            return false;
+        }
+        int b = blockFor(key);
+        int[] block = blocks[b];
+        int position = Arrays.binarySearch(block, 0, counts[b], key);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(block, position + 1, block, position, counts[b] - position - 1);
+        if (--counts[b] == 0) {
+            removeBlock(b);
+        }
+        size--;
+        offsetsStale = true;
+        return true;
+    }
+
+    public boolean contains(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        refreshOffsets();
+        int b = Arrays.binarySearch(offsets, 0, blockCount, index);
+        if (b < 0) {
+            b = -b - 2;
+        }
+        return blocks[b][index - offsets[b]];
+    }
+
+    public int indexOf(int key) {
+        if (blockCount == 0) {
+            return -1;
+        }
+        refreshOffsets();
+        int b = blockFor(key);
+        int position = Arrays.binarySearch(blocks[b], 0, counts[b], key);
+        return position >= 0 ? offsets[b] + position : position - offsets[b];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(blocks, 0, blockCount, null);
+        blockCount = 0;
+        size = 0;
+        offsetsStale = false;
+    }
+
+    private int blockFor(int key) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blocks[mid][counts[mid] - 1] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void refreshOffsets() {
+        if (!offsetsStale) {
+            return;
+        }
+        int offset = 0;
+        for (int b = 0; b < blockCount; b++) {
+            offsets[b] = offset;
+            offset += counts[b];
+        }
+        offsetsStale = false;
+    }
+
+    private void insertBlock(int b, int[] block, int count) {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount << 1);
+            counts = Arrays.copyOf(counts, blockCount << 1);
+            offsets = Arrays.copyOf(offsets, blockCount << 1);
+        }
+        System.arraycopy(blocks, b, blocks, b + 1, blockCount - b);
+        System.arraycopy(counts, b, counts, b + 1, blockCount - b);
+        blocks[b] = block;
+        counts[b] = count;
+        blockCount++;
+        offsetsStale = true;
+    }
+
+    private void removeBlock(int b) {
+        System.arraycopy(blocks, b + 1, blocks, b, blockCount - b - 1);
+        System.arraycopy(counts, b + 1, counts, b, blockCount - b - 1);
+        blocks[--blockCount] = null;
+        offsetsStale = true;
+    }
+}